@@ -0,0 +1,374 @@
+package com.crazyxacker.colorthief;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line extractor of the palettes of all images within a directory tree, e.g. for nightly jobs over a media
+ * library.
+ * <p>
+ * Images are decoded and quantized in two pipelined stages with their own number of workers. Decoding runs through
+ * {@link ImageIO} and subsamples big images down to the sample size while reading them, the palettes are the same
+ * median cut ones <code>ColorThief</code> extracts, so the tool needs no JavaFX at all.
+ * At most <code>--queue</code> decoded images wait for the extraction, so the memory stays bounded however fast the
+ * decoders are. Results are written as JSON Lines or CSV in the order of completion, the throughput is printed to
+ * the standard error when all images are done. If the palettes can't be written, no more images are started and
+ * the tool exits with status 1.
+ */
+public class ColorThiefCli {
+    private static final Set<String> EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif", "bmp", "wbmp");
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: colorthief [options] <directory>",
+            "  --colors <n>        size of the palettes, 2 to 256 (default 8)",
+            "  --quality <n>       sample every n-th pixel (default 10)",
+            "  --sample-size <n>   maximum width and height of the decoded images (default 256)",
+            "  --include-white     don't ignore white pixels",
+            "  --format <format>   jsonl or csv (default jsonl)",
+            "  --output <file>     file to write the palettes to (default standard output)",
+            "  --decoders <n>      decoding workers (default number of processors)",
+            "  --extractors <n>    extraction workers (default number of processors)",
+            "  --queue <n>         decoded images waiting for the extraction (default 64)");
+
+    int colorCount = 8;
+    int quality = 10;
+    int sampleSize = 256;
+    boolean ignoreWhite = true;
+    boolean csv;
+    Path output;
+    int decoders = Runtime.getRuntime().availableProcessors();
+    int extractors = Runtime.getRuntime().availableProcessors();
+    int queue = 64;
+    Path directory;
+
+    private final AtomicInteger images = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicReference<IOException> writeFailure = new AtomicReference<>();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        ColorThiefCli cli = new ColorThiefCli();
+        try {
+            cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try {
+            cli.run();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+        System.exit(cli.failures.get() > 0 ? 1 : 0);
+    }
+
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--colors" -> colorCount = intValue(args, ++i, 2, 256);
+                case "--quality" -> quality = intValue(args, ++i, 1, Integer.MAX_VALUE);
+                case "--sample-size" -> sampleSize = intValue(args, ++i, 1, Integer.MAX_VALUE);
+                case "--include-white" -> ignoreWhite = false;
+                case "--format" -> {
+                    String format = value(args, ++i);
+                    if (!format.equals("jsonl") && !format.equals("csv")) {
+                        throw new IllegalArgumentException("Specified format must be jsonl or csv.");
+                    }
+                    csv = format.equals("csv");
+                }
+                case "--output" -> output = Paths.get(value(args, ++i));
+                case "--decoders" -> decoders = intValue(args, ++i, 1, 1024);
+                case "--extractors" -> extractors = intValue(args, ++i, 1, 1024);
+                case "--queue" -> queue = intValue(args, ++i, 1, 1 << 16);
+                default -> {
+                    if (arg.startsWith("--") || directory != null) {
+                        throw new IllegalArgumentException("Unknown argument " + arg + ".");
+                    }
+                    directory = Paths.get(arg);
+                }
+            }
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("Specified directory is missing.");
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Specified " + args[i - 1] + " has no value.");
+        }
+        return args[i];
+    }
+
+    private static int intValue(String[] args, int i, int min, int max) {
+        String value = value(args, i);
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= min && result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Specified " + args[i - 1] + " must be between " + min + " and " + max + ".");
+    }
+
+    void run() throws IOException, InterruptedException {
+        Writer writer = output != null
+                ? Files.newBufferedWriter(output, StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            run(writer);
+        } finally {
+            if (output != null) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the palettes of all images to the writer. Once a write fails, no more images are started and the
+     * first failure is thrown when the images already started are done
+     */
+    void run(Writer writer) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService decodePool = Executors.newFixedThreadPool(decoders);
+        ExecutorService extractPool = Executors.newFixedThreadPool(extractors);
+        // permits for images being decoded, waiting or being extracted
+        Semaphore inFlight = new Semaphore(decoders + queue + extractors);
+
+        try {
+            if (csv) {
+                writer.write("path,width,height,palette,populations,error\n");
+            }
+
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(directory)) {
+                files = walk.filter(Files::isRegularFile).filter(ColorThiefCli::isImage).sorted().collect(Collectors.toList());
+            }
+
+            for (Path file : files) {
+                inFlight.acquire();
+                if (writeFailure.get() != null) {
+                    inFlight.release();
+                    break;
+                }
+                decodePool.execute(() -> {
+                    if (writeFailure.get() != null) {
+                        inFlight.release();
+                        return;
+                    }
+
+                    Decoded decoded;
+                    try {
+                        decoded = decode(file);
+                    } catch (IOException | RuntimeException e) {
+                        try {
+                            write(writer, file, null, null, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return;
+                    }
+
+                    extractPool.execute(() -> {
+                        try {
+                            if (writeFailure.get() != null) {
+                                return;
+                            }
+
+                            ColorMap colorMap = null;
+                            RuntimeException error = null;
+                            try {
+                                colorMap = Quantizer.medianCut().quantize(decoded.pixels, colorCount,
+                                        SamplingStrategy.stride(quality), ignoreWhite, MMCQ.DEFAULT_SIGBITS);
+                            } catch (RuntimeException e) {
+                                error = e;
+                            }
+                            write(writer, file, decoded, colorMap, error);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                });
+            }
+        } finally {
+            decodePool.shutdown();
+            decodePool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            extractPool.shutdown();
+            extractPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        IOException failure = writeFailure.get();
+        if (failure != null) {
+            throw new IOException("Unable to write the palettes: " + failure.getMessage(), failure);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf(Locale.ROOT, "%d images (%d failed), %.1f MB in %.2f s: %.1f images/s, %.1f MB/s%n",
+                images.get(), failures.get(), bytes.get() / 1e6, seconds, images.get() / seconds, bytes.get() / 1e6 / seconds);
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Decodes an image subsampled to fit into sampleSize x sampleSize pixels
+     */
+    private Decoded decode(Path file) throws IOException {
+        bytes.addAndGet(Files.size(file));
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = Math.max(1, (Math.max(width, height) + sampleSize - 1) / sampleSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                BufferedImage image = reader.read(0, param);
+                int[] argb = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+                return new Decoded(width, height, PixelBuffer.ofArgb(argb, image.getWidth(), image.getHeight()));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void write(Writer writer, Path file, Decoded decoded, ColorMap colorMap, Exception error) {
+        images.incrementAndGet();
+        if (error != null) {
+            failures.incrementAndGet();
+        }
+
+        StringBuilder palette = new StringBuilder();
+        StringBuilder populations = new StringBuilder();
+        String separator = csv ? " " : ",";
+        if (colorMap != null) {
+            for (MMCQ.ColorSpaceBox box : colorMap.boxes) {
+                int[] color = box.avg(false);
+                if (palette.length() > 0) {
+                    palette.append(separator);
+                    populations.append(separator);
+                }
+                String hex = String.format("#%02x%02x%02x", color[0], color[1], color[2]);
+                palette.append(csv ? hex : '"' + hex + '"');
+                populations.append(box.count(false));
+            }
+        }
+
+        String path = file.toString();
+        String message = error != null ? String.valueOf(error.getMessage()) : null;
+        StringBuilder line = new StringBuilder();
+        if (csv) {
+            line.append(csvField(path)).append(',');
+            if (decoded != null) {
+                line.append(decoded.width).append(',').append(decoded.height);
+            } else {
+                line.append(',');
+            }
+            line.append(',').append(palette).append(',').append(populations).append(',');
+            if (message != null) {
+                line.append(csvField(message));
+            }
+        } else {
+            line.append("{\"path\":").append(jsonString(path));
+            if (decoded != null) {
+                line.append(",\"width\":").append(decoded.width).append(",\"height\":").append(decoded.height);
+            }
+            if (message != null) {
+                line.append(",\"error\":").append(jsonString(message));
+            } else {
+                line.append(",\"palette\":[").append(palette).append("],\"populations\":[").append(populations).append(']');
+            }
+            line.append('}');
+        }
+        line.append('\n');
+
+        synchronized (writer) {
+            if (writeFailure.get() != null) {
+                return;
+            }
+            try {
+                writer.write(line.toString());
+            } catch (IOException e) {
+                writeFailure.set(e);
+            }
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private record Decoded(int width, int height, PixelBuffer pixels) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.crazyxacker.colorthief;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the command line parses every option, rejects invalid ones, writes the palettes of all example
+ * images and stops on write failures
+ */
+public class ColorThiefCliTest {
+    private int failures;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ColorThiefCliTest test = new ColorThiefCliTest();
+        test.run();
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        testParse();
+        testRun();
+        testWriteFailure();
+
+        System.out.println(failures == 0 ? "All checks passed." : failures + " checks failed!");
+    }
+
+    private void testParse() {
+        ColorThiefCli defaults = new ColorThiefCli();
+        defaults.parse(new String[] {"images"});
+        check("default options", "8 10 256 true false null 64 images", options(defaults));
+
+        ColorThiefCli cli = new ColorThiefCli();
+        cli.parse(new String[] {"--colors", "16", "--quality", "3", "--sample-size", "512", "--include-white", "--format", "csv",
+                "--output", "palettes.csv", "--decoders", "2", "--extractors", "3", "--queue", "5", "images"});
+        check("all options", "16 3 512 false true palettes.csv 5 images", options(cli));
+        check("workers", "2 3", cli.decoders + " " + cli.extractors);
+
+        String[][] invalid = {
+                {},
+                {"--colors", "1", "images"},
+                {"--colors", "257", "images"},
+                {"--quality", "0", "images"},
+                {"--quality", "ten", "images"},
+                {"--format", "xml", "images"},
+                {"--queue", "images"},
+                {"images", "--colors"},
+                {"images", "more-images"},
+                {"--verbose", "images"}
+        };
+        for (String[] args : invalid) {
+            try {
+                new ColorThiefCli().parse(args);
+                check("invalid arguments " + Arrays.toString(args) + " rejected", true, false);
+            } catch (IllegalArgumentException e) {
+                // rejected
+            }
+        }
+    }
+
+    private void testRun() throws IOException, InterruptedException {
+        Path output = Files.createTempFile("palettes", ".jsonl");
+        try {
+            ColorThiefCli run = new ColorThiefCli();
+            run.parse(new String[] {"--colors", "6", "--sample-size", "1024", "--decoders", "2", "--extractors", "2", "--queue", "1",
+                    "--output", output.toString(), "../examples/img"});
+            run.run();
+
+            List<String> lines = Files.readAllLines(output);
+            String photo1 = lines.stream().filter(line -> line.contains("photo1.jpg")).findFirst().orElse("");
+            // the example images fit into the sample size, so they are decoded as they are
+            ColorMap colorMap = Quantizer.medianCut().quantize(read("../examples/img/photo1.jpg"), 6, SamplingStrategy.stride(10), true, MMCQ.DEFAULT_SIGBITS);
+            StringBuilder palette = new StringBuilder();
+            for (int[] color : colorMap.palette()) {
+                palette.append(palette.length() > 0 ? "," : "").append(String.format("\"#%02x%02x%02x\"", color[0], color[1], color[2]));
+            }
+            check("command line palette of photo1.jpg", true, photo1.contains("\"palette\":[" + palette + "]"));
+            check("command line images", 3, lines.size());
+            check("command line errors", 0L, lines.stream().filter(line -> line.contains("\"error\"")).count());
+        } finally {
+            Files.delete(output);
+        }
+    }
+
+    /**
+     * A writer that fails stops the run with its first failure instead of dying in a worker thread
+     */
+    private void testWriteFailure() throws InterruptedException {
+        AtomicInteger writes = new AtomicInteger();
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                writes.incrementAndGet();
+                throw new IOException("No space left on device");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        ColorThiefCli cli = new ColorThiefCli();
+        cli.parse(new String[] {"--decoders", "1", "--extractors", "1", "--queue", "1", "../examples/img"});
+        try {
+            cli.run(failing);
+            check("write failure thrown", true, false);
+        } catch (IOException e) {
+            check("write failure cause", "No space left on device", e.getCause().getMessage());
+        }
+        check("writes after the failure", 1, writes.get());
+    }
+
+    private static PixelBuffer read(String pathname) throws IOException {
+        BufferedImage image = ImageIO.read(new File(pathname));
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return PixelBuffer.ofArgb(image.getRGB(0, 0, width, height, null, 0, width), width, height);
+    }
+
+    private static String options(ColorThiefCli cli) {
+        return cli.colorCount + " " + cli.quality + " " + cli.sampleSize + " " + cli.ignoreWhite + " " + cli.csv + " "
+                + cli.output + " " + cli.queue + " " + cli.directory;
+    }
+
+    private void check(String name, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failures++;
+            System.out.println("Values differ for " + name + ":\n  expected " + expected + "\n  actual   " + actual);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.crazyxacker.colorthief;
+
+/**
+ * Distance between two colors, used to find the nearest palette color and to merge similar palette colors
+ */
+public enum ColorDistance {
+    /**
+     * Euclidean distance of the sRGB values, the fastest one but far from how different colors look
+     */
+    RGB,
+    /**
+     * Euclidean distance in CIELAB (CIE76 delta E), a difference of about 2.3 is just noticeable
+     */
+    CIE76,
+    /**
+     * CIE94 delta E for graphic arts, which weights chroma and hue differences like CIEDE2000 does for most colors
+     * at a fraction of its cost
+     */
+    CIE94
+}
@@ -0,0 +1,550 @@
+package com.crazyxacker.colorthief;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Histogram (1-d array, giving the number of pixels in each quantized region of color space) together with
+ * the bounds of the occupied color space, filled in a single pass over the sampled pixels.
+ * <p>
+ * Histograms of several images can be merged into one, e.g. for the palette of an album cover wall or of all
+ * frames of a clip, and quantized with {@link MMCQ#quantize(ColorHistogram, int)} or a {@link Quantizer}. Merging
+ * costs one pass over the bins instead of a scan of the pixels. {@link #toByteArray()} stores a histogram in a
+ * compact binary form, so aggregates can be kept and extended later. Histograms are not thread-safe.
+ * <p>
+ * A histogram holds up to {@link Integer#MAX_VALUE} pixels, adding or merging more throws an
+ * {@link ArithmeticException} instead of overflowing. Long clips should be sampled, e.g. every n-th frame with a
+ * {@link SamplingStrategy#budget(int) budget} per frame.
+ */
+public final class ColorHistogram {
+    /**
+     * "CTH" and the version of the binary form
+     */
+    private static final int MAGIC = 0x43544801;
+
+    final int sigbits;
+    final int[] histo;
+    private final int rshift;
+
+    int rmin = 1000000, rmax = 0;
+    int gmin = 1000000, gmax = 0;
+    int bmin = 1000000, bmax = 0;
+
+    /**
+     * Reduced-space values of the first added pixel, needed to merge bounds in the same way as they are tracked
+     */
+    private int rfirst, gfirst, bfirst;
+
+    private int count;
+
+    /**
+     * Distinct colors of the added pixels, <code>null</code> once there are too many of them
+     */
+    private UniqueColors colors = new UniqueColors();
+
+    /**
+     * Empty histogram with the default precision of {@link MMCQ#DEFAULT_SIGBITS}
+     */
+    public ColorHistogram() {
+        this(MMCQ.DEFAULT_SIGBITS);
+    }
+
+    /**
+     * Empty histogram
+     *
+     * @param sigbits significant bits kept per color component, between {@link MMCQ#MIN_SIGBITS} and
+     *                {@link MMCQ#MAX_SIGBITS}
+     *
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public ColorHistogram(int sigbits) {
+        MMCQ.checkSigbits(sigbits);
+        this.sigbits = sigbits;
+        this.histo = new int[1 << (3 * sigbits)];
+        this.rshift = 8 - sigbits;
+    }
+
+    /**
+     * Histogram of given bin counts, e.g. of a decayed or otherwise weighted histogram. The exact colors of the
+     * pixels are unknown, so it is always quantized
+     *
+     * @param sigbits significant bits kept per color component
+     * @param bins number of pixels of every bin, the array is used as it is
+     */
+    static ColorHistogram ofBins(int sigbits, int[] bins) {
+        ColorHistogram histogram = new ColorHistogram(sigbits, bins);
+        int mask = (1 << sigbits) - 1;
+        for (int index = 0; index < bins.length; index++) {
+            if (bins[index] == 0) {
+                continue;
+            }
+
+            int rval = index >> (2 * sigbits);
+            int gval = (index >> sigbits) & mask;
+            int bval = index & mask;
+            if (histogram.count == 0) {
+                histogram.rfirst = histogram.rmin = histogram.rmax = rval;
+                histogram.gfirst = histogram.gmin = histogram.gmax = gval;
+                histogram.bfirst = histogram.bmin = histogram.bmax = bval;
+            }
+            histogram.rmin = Math.min(histogram.rmin, rval);
+            histogram.rmax = Math.max(histogram.rmax, rval);
+            histogram.gmin = Math.min(histogram.gmin, gval);
+            histogram.gmax = Math.max(histogram.gmax, gval);
+            histogram.bmin = Math.min(histogram.bmin, bval);
+            histogram.bmax = Math.max(histogram.bmax, bval);
+            histogram.count = Math.addExact(histogram.count, bins[index]);
+        }
+        histogram.colors = null;
+        return histogram;
+    }
+
+    private ColorHistogram(int sigbits, int[] histo) {
+        this.sigbits = sigbits;
+        this.histo = histo;
+        this.rshift = 8 - sigbits;
+    }
+
+    /**
+     * Removes all pixels, so the histogram can be filled again without allocating a new one
+     */
+    void clear() {
+        Arrays.fill(histo, 0);
+        rmin = gmin = bmin = 1000000;
+        rmax = gmax = bmax = 0;
+        rfirst = gfirst = bfirst = 0;
+        count = 0;
+        if (colors != null) {
+            colors.clear();
+        } else {
+            colors = new UniqueColors();
+        }
+    }
+
+    /**
+     * Histogram of already decoded pixels
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits significant bits kept per color component, between {@link MMCQ#MIN_SIGBITS} and
+     *                {@link MMCQ#MAX_SIGBITS}
+     *
+     * @return {@link ColorHistogram}
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public static ColorHistogram of(PixelBuffer pixels, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        SamplingStrategy.Plan plan = sampling.plan(pixels.width, pixels.height);
+        return pixels.fillHistogram(new ColorHistogram(sigbits), plan, 0, pixels.height, ignoreWhite);
+    }
+
+    /**
+     * Adds a pixel to the histogram
+     *
+     * @param r the red value, from 0 to 255
+     * @param g the green value, from 0 to 255
+     * @param b the blue value, from 0 to 255
+     *
+     * @throws IllegalArgumentException if a value is out of range
+     * @throws ArithmeticException if the histogram already holds {@link Integer#MAX_VALUE} pixels
+     */
+    public void add(int r, int g, int b) {
+        if ((r | g | b) >>> 8 != 0) {
+            throw new IllegalArgumentException("Specified color values must be between 0 and 255.");
+        }
+        increment(r, g, b);
+    }
+
+    /**
+     * Adds a pixel whose values are known to be within 0 and 255
+     */
+    private void increment(int r, int g, int b) {
+        if (count == Integer.MAX_VALUE) {
+            throw new ArithmeticException("Color histogram can't hold more than " + Integer.MAX_VALUE + " pixels.");
+        }
+
+        int rval = r >> rshift;
+        int gval = g >> rshift;
+        int bval = b >> rshift;
+
+        histo[MMCQ.getColorIndex(rval, gval, bval, sigbits)]++;
+
+        if (colors != null && !colors.add((r << 16) | (g << 8) | b, 1)) {
+            colors = null;
+        }
+
+        if (count++ == 0) {
+            rfirst = rval;
+            gfirst = gval;
+            bfirst = bval;
+        }
+
+        // The max is only checked if the value isn't a new min, exactly as the JavaScript version does
+        if (rval < rmin) {
+            rmin = rval;
+        } else if (rval > rmax) {
+            rmax = rval;
+        }
+
+        if (gval < gmin) {
+            gmin = gval;
+        } else if (gval > gmax) {
+            gmax = gval;
+        }
+
+        if (bval < bmin) {
+            bmin = bval;
+        } else if (bval > bmax) {
+            bmax = bval;
+        }
+    }
+
+    /**
+     * Adds a packed ARGB pixel to the histogram
+     *
+     * @param argb the packed pixel
+     * @param ignoreWhite if <code>true</code>, white pixels are skipped
+     */
+    void addArgb(int argb, boolean ignoreWhite) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+
+        if (!(ignoreWhite && r > 250 && g > 250 && b > 250)) {
+            increment(r, g, b);
+        }
+    }
+
+    /**
+     * Adds the pixels of another histogram to this one. Merging the histograms of consecutive parts of an image
+     * in order gives exactly the same histogram and bounds as a single pass over the whole image
+     *
+     * @param other histogram of the following pixels, it isn't changed
+     *
+     * @throws IllegalArgumentException if the histograms have a different precision
+     * @throws ArithmeticException if both histograms hold more than {@link Integer#MAX_VALUE} pixels together
+     */
+    public void merge(ColorHistogram other) {
+        if (other.sigbits != sigbits) {
+            throw new IllegalArgumentException("Specified histogram must have the same sigbits.");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        // every bin holds at most count pixels, so checking the sum of the counts covers the bins too
+        int mergedCount = Math.addExact(count, other.count);
+
+        for (int i = 0; i < histo.length; i++) {
+            histo[i] += other.histo[i];
+        }
+
+        if (colors != null && (other.colors == null || !colors.addAll(other.colors))) {
+            colors = null;
+        }
+
+        if (count == 0) {
+            rmin = other.rmin;
+            rmax = other.rmax;
+            gmin = other.gmin;
+            gmax = other.gmax;
+            bmin = other.bmin;
+            bmax = other.bmax;
+            rfirst = other.rfirst;
+            gfirst = other.gfirst;
+            bfirst = other.bfirst;
+        } else {
+            // Only the first pixel of the other part can turn from a new min into a max candidate, because all
+            // later pixels that were a new min there are smaller than it
+            rmax = Math.max(Math.max(rmax, other.rmax), other.rfirst >= rmin ? other.rfirst : 0);
+            gmax = Math.max(Math.max(gmax, other.gmax), other.gfirst >= gmin ? other.gfirst : 0);
+            bmax = Math.max(Math.max(bmax, other.bmax), other.bfirst >= bmin ? other.bfirst : 0);
+            rmin = Math.min(rmin, other.rmin);
+            gmin = Math.min(gmin, other.gmin);
+            bmin = Math.min(bmin, other.bmin);
+        }
+
+        count = mergedCount;
+    }
+
+    /**
+     * @return number of pixels added to the histogram
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return significant bits kept per color component
+     */
+    public int getSigbits() {
+        return sigbits;
+    }
+
+    /**
+     * Number of pixels within a cell of the reduced color space
+     *
+     * @param r the reduced red value, from 0 to <code>(1 << sigbits) - 1</code>
+     * @param g the reduced green value
+     * @param b the reduced blue value
+     *
+     * @return number of pixels
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public int get(int r, int g, int b) {
+        if ((r | g | b) >>> sigbits != 0) {
+            throw new IllegalArgumentException("Specified reduced color values must be between 0 and " + ((1 << sigbits) - 1) + ".");
+        }
+        return histo[MMCQ.getColorIndex(r, g, b, sigbits)];
+    }
+
+    /**
+     * Exact bounds of the occupied cells. The tracked maxima keep the quirk of the JavaScript version and miss the
+     * values of the first added pixel, these don't
+     *
+     * @return [rmin, rmax, gmin, gmax, bmin, bmax], the maxima are below the minima if the histogram is empty
+     */
+    int[] occupiedBounds() {
+        int vboxLength = 1 << sigbits;
+        int mask = vboxLength - 1;
+        int[] bounds = {vboxLength, -1, vboxLength, -1, vboxLength, -1};
+        for (int index = 0; index < histo.length; index++) {
+            if (histo[index] == 0) {
+                continue;
+            }
+            int r = index >> (2 * sigbits);
+            int g = (index >> sigbits) & mask;
+            int b = index & mask;
+            bounds[0] = Math.min(bounds[0], r);
+            bounds[1] = Math.max(bounds[1], r);
+            bounds[2] = Math.min(bounds[2], g);
+            bounds[3] = Math.max(bounds[3], g);
+            bounds[4] = Math.min(bounds[4], b);
+            bounds[5] = Math.max(bounds[5], b);
+        }
+        return bounds;
+    }
+
+    /**
+     * Palette of the exact colors of the added pixels, if there are only a few of them
+     *
+     * @param maxColors size of the palette
+     *
+     * @return {@link ColorMap} or <code>null</code> if there are more than maxColors distinct colors
+     */
+    ColorMap exactColorMap(int maxColors) {
+        if (colors == null || colors.size() > maxColors) {
+            return null;
+        }
+        return colors.colorMap(this);
+    }
+
+    /**
+     * Writes the histogram in its compact binary form: only the occupied bins are stored, as variable-length
+     * deltas of their index followed by their count
+     *
+     * @param out {@link DataOutput} to write to
+     *
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(sigbits);
+        writeVarint(out, count);
+        if (count == 0) {
+            return;
+        }
+
+        int[] bounds = {rmin, rmax, gmin, gmax, bmin, bmax, rfirst, gfirst, bfirst};
+        for (int bound : bounds) {
+            out.writeByte(bound);
+        }
+
+        int[] uniqueColors = colors != null ? colors.toArray() : null;
+        writeVarint(out, uniqueColors != null ? uniqueColors.length / 2 + 1 : 0);
+        if (uniqueColors != null) {
+            for (int i = 0; i < uniqueColors.length; i += 2) {
+                out.writeByte(uniqueColors[i] >> 16);
+                out.writeShort(uniqueColors[i]);
+                writeVarint(out, uniqueColors[i + 1]);
+            }
+        }
+
+        int bins = 0;
+        for (int hval : histo) {
+            if (hval != 0) {
+                bins++;
+            }
+        }
+        writeVarint(out, bins);
+        int previous = -1;
+        for (int index = 0; index < histo.length; index++) {
+            if (histo[index] != 0) {
+                writeVarint(out, index - previous);
+                writeVarint(out, histo[index]);
+                previous = index;
+            }
+        }
+    }
+
+    /**
+     * @return the compact binary form of the histogram, see {@link #write(DataOutput)}
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a histogram written by {@link #write(DataOutput)}
+     *
+     * @param in {@link DataInput} to read from
+     *
+     * @return {@link ColorHistogram}
+     * @throws IOException if reading fails or the data is no valid histogram
+     */
+    public static ColorHistogram read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Specified data is not a color histogram.");
+        }
+        int sigbits = in.readUnsignedByte();
+        if (sigbits < MMCQ.MIN_SIGBITS || sigbits > MMCQ.MAX_SIGBITS) {
+            throw new IOException("Specified data has an unsupported sigbits of " + sigbits + ".");
+        }
+
+        ColorHistogram histogram = new ColorHistogram(sigbits);
+        histogram.count = readVarint(in);
+        if (histogram.count < 0) {
+            throw invalid();
+        }
+        if (histogram.count == 0) {
+            return histogram;
+        }
+
+        // the max of an axis isn't checked against its first value: like in the JavaScript version it is only
+        // updated by values that aren't a new min, so it may stay below the first value
+        int max = (1 << sigbits) - 1;
+        histogram.rmin = readBound(in, max);
+        histogram.rmax = readBound(in, max);
+        histogram.gmin = readBound(in, max);
+        histogram.gmax = readBound(in, max);
+        histogram.bmin = readBound(in, max);
+        histogram.bmax = readBound(in, max);
+        histogram.rfirst = readBound(in, max);
+        histogram.gfirst = readBound(in, max);
+        histogram.bfirst = readBound(in, max);
+        if (histogram.rfirst < histogram.rmin || histogram.gfirst < histogram.gmin || histogram.bfirst < histogram.bmin) {
+            throw invalid();
+        }
+
+        int uniqueColors = readVarint(in) - 1;
+        if (uniqueColors > UniqueColors.MAX_COLORS) {
+            throw invalid();
+        }
+        if (uniqueColors < 0) {
+            histogram.colors = null;
+        }
+        int uniqueCount = 0;
+        for (int i = 0; i < uniqueColors; i++) {
+            int rgb = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+            int count = readCount(in);
+            uniqueCount = addCount(uniqueCount, count);
+            histogram.colors.add(rgb, count);
+        }
+        if (uniqueColors >= 0 && uniqueCount != histogram.count) {
+            throw invalid();
+        }
+
+        int bins = readVarint(in);
+        int index = -1;
+        int binCount = 0;
+        for (int i = 0; i < bins; i++) {
+            int delta = readVarint(in);
+            if (delta <= 0 || index + delta >= histogram.histo.length) {
+                throw invalid();
+            }
+            index += delta;
+            histogram.histo[index] = readCount(in);
+            binCount = addCount(binCount, histogram.histo[index]);
+        }
+        if (binCount != histogram.count) {
+            throw invalid();
+        }
+        return histogram;
+    }
+
+    private static int readBound(DataInput in, int max) throws IOException {
+        int value = in.readUnsignedByte();
+        if (value > max) {
+            throw invalid();
+        }
+        return value;
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = readVarint(in);
+        if (count <= 0) {
+            throw invalid();
+        }
+        return count;
+    }
+
+    private static int addCount(int sum, int count) throws IOException {
+        try {
+            return Math.addExact(sum, count);
+        } catch (ArithmeticException e) {
+            throw invalid();
+        }
+    }
+
+    private static IOException invalid() {
+        return new IOException("Specified data is not a valid color histogram.");
+    }
+
+    /**
+     * Reads a histogram from its compact binary form, see {@link #write(DataOutput)}
+     *
+     * @param bytes binary form of the histogram
+     *
+     * @return {@link ColorHistogram}
+     * @throws IllegalArgumentException if the bytes are no valid histogram
+     */
+    public static ColorHistogram fromByteArray(byte[] bytes) {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw invalid();
+    }
+}
@@ -0,0 +1,503 @@
+package com.crazyxacker.colorthief;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Color map
+ * <p>
+ * The packed {@link #map(int)} and {@link #indexOf(int)} look colors up in an inverse color map: a table holding
+ * the palette index of every cell of the reduced color space, built on first use. By default its cells are the ones
+ * of the histogram the boxes were cut from, so colors within a box map exactly as {@link #map(int[])} does, while
+ * other colors map to the palette color nearest to the center of their cell.
+ * <p>
+ * Nearest colors are found by {@link ColorDistance#RGB} unless another distance is set. The perceptual distances
+ * compare CIELAB values taken from precomputed tables, so the inverse color map is built about as fast with them.
+ * <p>
+ * Color maps can be shared between threads. The tables are built under the lock of the map and dropped by every
+ * mutator ({@link #push}, {@link #setLookupBits}, {@link #setDistance}) under the same lock. {@link #boxes} must
+ * not be changed directly once the map is in use, as the tables would keep the previous palette.
+ */
+public class ColorMap {
+    /**
+     * Rows of a band that is remapped in one piece without dithering. Dithered images are remapped in a single
+     * pass, as the error of every row is diffused into the next one
+     */
+    private static final int REMAP_BAND_ROWS = 64;
+    /**
+     * Pixels from which the bands are remapped in parallel
+     */
+    private static final int REMAP_PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Boxes of the palette colors. Add them with {@link #push}; changing the list directly after the first lookup
+     * leaves the tables of the previous palette in place
+     */
+    public final List<MMCQ.ColorSpaceBox> boxes = new ArrayList<>();
+
+    private volatile int lookupBits;
+    private volatile ColorDistance distance = ColorDistance.RGB;
+    private volatile byte[] lookup;
+    private volatile int[] packedPalette;
+    /**
+     * L, a, b and chroma of every palette color
+     */
+    private volatile float[] paletteLab;
+
+    public synchronized void push(MMCQ.ColorSpaceBox box) {
+        boxes.add(box);
+        invalidate();
+    }
+
+    /**
+     * Drops the tables built from the palette, called with the lock held
+     */
+    private void invalidate() {
+        lookup = null;
+        packedPalette = null;
+        paletteLab = null;
+    }
+
+    public int[][] palette() {
+        int numVBoxes = boxes.size();
+        int[][] palette = new int[numVBoxes][];
+        for (int i = 0; i < numVBoxes; i++) {
+            palette[i] = boxes.get(i).avg(false);
+        }
+        return palette;
+    }
+
+    public int size() {
+        return boxes.size();
+    }
+
+    public int[] map(int[] color) {
+        for (MMCQ.ColorSpaceBox vbox : boxes) {
+            if (vbox.contains(color)) {
+                return vbox.avg(false);
+            }
+        }
+        return nearest(color);
+    }
+
+    /**
+     * Finds the palette color nearest to a color by the distance of this map
+     *
+     * @param color the color as [r, g, b]
+     *
+     * @return the nearest palette color or <code>null</code> if the map has no colors
+     */
+    public int[] nearest(int[] color) {
+        int index = nearestIndex(color[0], color[1], color[2]);
+        return index >= 0 ? boxes.get(index).avg(false) : null;
+    }
+
+    /**
+     * Maps a packed color to the palette with a single table lookup
+     *
+     * @param argb the packed color, the alpha channel is kept
+     *
+     * @return the packed palette color with the alpha channel of the given color
+     */
+    public int map(int argb) {
+        return (argb & 0xFF000000) | packedPalette()[indexOf(argb)];
+    }
+
+    /**
+     * Looks up the palette index of a packed color with a single table lookup
+     *
+     * @param rgb the packed color, the alpha channel is ignored
+     *
+     * @return index of the color within {@link #palette()}
+     */
+    public int indexOf(int rgb) {
+        byte[] lookup = lookup();
+        return indexOf(lookup, bits(lookup), rgb);
+    }
+
+    private static int bits(byte[] lookup) {
+        return Integer.numberOfTrailingZeros(lookup.length) / 3;
+    }
+
+    private static int indexOf(byte[] lookup, int bits, int rgb) {
+        int shift = 8 - bits;
+        int r = (rgb >> 16 & 0xFF) >> shift;
+        int g = (rgb >> 8 & 0xFF) >> shift;
+        int b = (rgb & 0xFF) >> shift;
+        return lookup[(r << (2 * bits)) | (g << bits) | b] & 0xFF;
+    }
+
+    /**
+     * Maps every pixel of an image to the palette, e.g. to posterize it. Without dithering, bands of rows are mapped
+     * in parallel on the common {@link ForkJoinPool}
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param dither if <code>true</code>, the mapping errors are diffused to the neighbouring pixels
+     *               (Floyd-Steinberg), which hides the banding of small palettes
+     *
+     * @return packed ARGB pixels of the mapped image, row by row. The alpha channel is kept.
+     */
+    public int[] remap(PixelBuffer pixels, boolean dither) {
+        int[] target = new int[pixels.width * pixels.height];
+        remap(pixels, target, dither, ForkJoinPool.commonPool());
+        return target;
+    }
+
+    /**
+     * Maps every pixel of an image to the palette, e.g. to posterize it
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param target buffer of at least <code>width * height</code> receiving the packed ARGB pixels of the mapped
+     *               image row by row, it may be the array the pixels are read from. The alpha channel is kept.
+     * @param dither if <code>true</code>, the mapping errors are diffused to the neighbouring pixels
+     *               (Floyd-Steinberg), which hides the banding of small palettes
+     * @param executor {@link Executor} that maps the bands of rows of big images in parallel, unused if dithering
+     *
+     * @throws IllegalArgumentException if target is too small
+     */
+    public void remap(PixelBuffer pixels, int[] target, boolean dither, Executor executor) {
+        int width = pixels.width;
+        int height = pixels.height;
+        if (target.length < (long) width * height) {
+            throw new IllegalArgumentException("Specified target is too small for the image.");
+        }
+
+        // build the tables once before the bands use them
+        byte[] lookup = lookup();
+        int[] palette = packedPalette();
+        int bits = bits(lookup);
+
+        int bands = (height + REMAP_BAND_ROWS - 1) / REMAP_BAND_ROWS;
+        if (dither || bands < 2 || (long) width * height < REMAP_PARALLEL_THRESHOLD) {
+            remapRows(pixels, target, 0, height, dither, lookup, bits, palette);
+            return;
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[bands];
+        for (int band = 0; band < bands; band++) {
+            int y1 = band * REMAP_BAND_ROWS;
+            int y2 = Math.min(height, y1 + REMAP_BAND_ROWS);
+            futures[band] = CompletableFuture.runAsync(() -> remapRows(pixels, target, y1, y2, dither, lookup, bits, palette), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private static void remapRows(PixelBuffer pixels, int[] target, int y1, int y2, boolean dither, byte[] lookup, int bits, int[] palette) {
+        int width = pixels.width;
+        int[] row = new int[width];
+
+        if (!dither) {
+            for (int y = y1; y < y2; y++) {
+                pixels.readRow(y, row);
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int argb = row[x];
+                    target[offset + x] = (argb & 0xFF000000) | palette[indexOf(lookup, bits, argb)];
+                }
+            }
+            return;
+        }
+
+        // Errors of the current and the next row in 1/16, with a padding pixel on both sides
+        int[] current = new int[(width + 2) * 3];
+        int[] next = new int[(width + 2) * 3];
+        for (int y = y1; y < y2; y++) {
+            pixels.readRow(y, row);
+            int offset = y * width;
+            Arrays.fill(next, 0);
+
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int i = (x + 1) * 3;
+                int r = clamp(((argb >> 16) & 0xFF) + ((current[i] + 8) >> 4));
+                int g = clamp(((argb >> 8) & 0xFF) + ((current[i + 1] + 8) >> 4));
+                int b = clamp((argb & 0xFF) + ((current[i + 2] + 8) >> 4));
+
+                int color = palette[indexOf(lookup, bits, (r << 16) | (g << 8) | b)];
+                target[offset + x] = (argb & 0xFF000000) | color;
+
+                diffuse(current, next, i, r - ((color >> 16) & 0xFF));
+                diffuse(current, next, i + 1, g - ((color >> 8) & 0xFF));
+                diffuse(current, next, i + 2, b - (color & 0xFF));
+            }
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+        }
+    }
+
+    private static void diffuse(int[] current, int[] next, int i, int error) {
+        current[i + 3] += error * 7;
+        next[i - 3] += error * 3;
+        next[i] += error * 5;
+        next[i + 3] += error;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 0xFF);
+    }
+
+    /**
+     * Sets the precision of the inverse color map, which is built again on its next use. More bits map colors
+     * outside of the boxes more precisely, but the table grows 8 times per bit and takes longer to build.
+     *
+     * @param bits significant bits per color component, from {@link MMCQ#MIN_SIGBITS} to {@link MMCQ#MAX_SIGBITS}
+     *
+     * @throws IllegalArgumentException if bits is out of range
+     */
+    public synchronized void setLookupBits(int bits) {
+        MMCQ.checkSigbits(bits);
+        lookupBits = bits;
+        invalidate();
+    }
+
+    /**
+     * Sets the distance by which colors outside of the boxes are mapped to the nearest palette color. The inverse
+     * color map is built again on its next use.
+     *
+     * @param distance {@link ColorDistance}
+     */
+    public synchronized void setDistance(ColorDistance distance) {
+        if (distance == null) {
+            throw new IllegalArgumentException("Specified distance should not be null.");
+        }
+        this.distance = distance;
+        invalidate();
+    }
+
+    public ColorDistance getDistance() {
+        return distance;
+    }
+
+    /**
+     * Merges palette colors that are closer to each other than a given distance. Of each group of similar colors
+     * the most populated one is kept and takes over the population of the others, the order of the palette is kept.
+     *
+     * @param minDistance distance by the {@link ColorDistance} of this map, e.g. delta E for the perceptual ones
+     *
+     * @return a new color map with the same distance and lookup precision
+     *
+     * @throws IllegalArgumentException if minDistance is negative
+     */
+    public ColorMap deduplicate(double minDistance) {
+        if (minDistance < 0) {
+            throw new IllegalArgumentException("Specified minDistance should not be negative.");
+        }
+
+        int size = boxes.size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(boxes.get(b).count(false), boxes.get(a).count(false)));
+
+        // every color is merged into the most populated kept color within the distance
+        double limit = minDistance * minDistance;
+        float[] lab = distance != ColorDistance.RGB ? paletteLab() : null;
+        int[] keptBy = new int[size];
+        int[] counts = new int[size];
+        int[] kept = new int[size];
+        int keptCount = 0;
+        for (int i : order) {
+            keptBy[i] = i;
+            for (int k = 0; k < keptCount; k++) {
+                if (paletteDistance(lab, kept[k], i) < limit) {
+                    keptBy[i] = kept[k];
+                    break;
+                }
+            }
+            if (keptBy[i] == i) {
+                kept[keptCount++] = i;
+            }
+            counts[keptBy[i]] += boxes.get(i).count(false);
+        }
+
+        ColorMap result = this instanceof Nearest ? new Nearest() : new ColorMap();
+        result.lookupBits = lookupBits;
+        result.distance = distance;
+        for (int i = 0; i < size; i++) {
+            if (keptBy[i] == i) {
+                result.push(boxes.get(i).withCount(counts[i]));
+            }
+        }
+        return result;
+    }
+
+    private double paletteDistance(float[] lab, int reference, int other) {
+        if (lab == null) {
+            int[] c1 = boxes.get(reference).avg(false);
+            int[] c2 = boxes.get(other).avg(false);
+            int dr = c1[0] - c2[0];
+            int dg = c1[1] - c2[1];
+            int db = c1[2] - c2[2];
+            return dr * dr + dg * dg + db * db;
+        }
+        return Lab.distance(distance, lab, 4 * reference, lab[4 * reference + 3], lab, 4 * other, lab[4 * other + 3]);
+    }
+
+    /**
+     * Palette index of a color as {@link #map(int[])} finds it
+     */
+    int indexOfColor(int[] color) {
+        int index = containingIndex(color);
+        return index >= 0 ? index : nearestIndex(color[0], color[1], color[2]);
+    }
+
+    /**
+     * Index of the box containing a color or -1 if there is none
+     */
+    int containingIndex(int[] color) {
+        for (int i = 0; i < boxes.size(); i++) {
+            if (boxes.get(i).contains(color)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int nearestIndex(int r, int g, int b) {
+        if (distance != ColorDistance.RGB) {
+            float[] lab = new float[3];
+            Lab.convert(r, g, b, lab, 0);
+            return nearestIndex(lab, 0);
+        }
+
+        int nearest = -1;
+        int distance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < boxes.size(); i++) {
+            int[] vbColor = boxes.get(i).avg(false);
+            int dr = r - vbColor[0];
+            int dg = g - vbColor[1];
+            int db = b - vbColor[2];
+            int d = dr * dr + dg * dg + db * db;
+            if (d < distance) {
+                distance = d;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Palette index nearest to a CIELAB color by the perceptual distance of this map
+     */
+    private int nearestIndex(float[] lab, int offset) {
+        float[] palette = paletteLab();
+        double chroma = Lab.chroma(lab, offset);
+        int nearest = -1;
+        double distance = Double.MAX_VALUE;
+
+        for (int i = 0; i < boxes.size(); i++) {
+            double d = Lab.distance(this.distance, lab, offset, chroma, palette, 4 * i, palette[4 * i + 3]);
+            if (d < distance) {
+                distance = d;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private float[] paletteLab() {
+        float[] lab = paletteLab;
+        return lab != null ? lab : buildPaletteLab();
+    }
+
+    private synchronized float[] buildPaletteLab() {
+        float[] lab = paletteLab;
+        if (lab == null) {
+            int[][] palette = palette();
+            lab = new float[4 * palette.length];
+            for (int i = 0; i < palette.length; i++) {
+                Lab.convert(palette[i][0], palette[i][1], palette[i][2], lab, 4 * i);
+                lab[4 * i + 3] = (float) Lab.chroma(lab, 4 * i);
+            }
+            paletteLab = lab;
+        }
+        return lab;
+    }
+
+    private int[] packedPalette() {
+        int[] packed = packedPalette;
+        return packed != null ? packed : buildPackedPalette();
+    }
+
+    private synchronized int[] buildPackedPalette() {
+        int[] packed = packedPalette;
+        if (packed == null) {
+            int[][] palette = palette();
+            packed = new int[palette.length];
+            for (int i = 0; i < palette.length; i++) {
+                packed[i] = (palette[i][0] << 16) | (palette[i][1] << 8) | palette[i][2];
+            }
+            packedPalette = packed;
+        }
+        return packed;
+    }
+
+    private byte[] lookup() {
+        byte[] lookup = this.lookup;
+        return lookup != null ? lookup : buildLookup();
+    }
+
+    private synchronized byte[] buildLookup() {
+        if (lookup != null) {
+            return lookup;
+        }
+        if (boxes.isEmpty()) {
+            throw new IllegalStateException("Color map has no colors.");
+        }
+
+        if (lookupBits == 0) {
+            lookupBits = boxes.get(0).sigbits;
+        }
+        int bits = lookupBits;
+        int length = 1 << bits;
+        int shift = 8 - bits;
+        byte[] table = new byte[1 << (3 * bits)];
+        int[] color = new int[3];
+        float[] cells = distance != ColorDistance.RGB ? Lab.cells(bits) : null;
+
+        // every cell is represented by its center color
+        int index = 0;
+        for (int r = 0; r < length; r++) {
+            color[0] = (r << shift) + (1 << shift >> 1);
+            for (int g = 0; g < length; g++) {
+                color[1] = (g << shift) + (1 << shift >> 1);
+                for (int b = 0; b < length; b++) {
+                    color[2] = (b << shift) + (1 << shift >> 1);
+                    if (cells == null) {
+                        table[index] = (byte) indexOfColor(color);
+                    } else {
+                        int box = containingIndex(color);
+                        table[index] = (byte) (box >= 0 ? box : nearestIndex(cells, 3 * index));
+                    }
+                    index++;
+                }
+            }
+        }
+
+        lookup = table;
+        return table;
+    }
+
+    /**
+     * Color map whose colors aren't the averages of disjoint boxes, so colors are mapped to the nearest one
+     */
+    static class Nearest extends ColorMap {
+        @Override
+        public int[] map(int[] color) {
+            return nearest(color);
+        }
+
+        @Override
+        int containingIndex(int[] color) {
+            return -1;
+        }
+    }
+}
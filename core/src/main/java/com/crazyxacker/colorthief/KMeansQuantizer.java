@@ -0,0 +1,253 @@
+package com.crazyxacker.colorthief;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Refines the palette of another quantizer with Lloyd's k-means iterations. The points are the populated cells of
+ * the histogram weighted by their population, so an iteration costs the same for small and huge images. The
+ * assignment step runs in parallel bands of cells once there are enough of them.
+ */
+final class KMeansQuantizer extends Quantizer {
+    /**
+     * Populated cells from which the assignment is split into bands
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    /**
+     * The iterations stop once no centroid moves by more than this many color values
+     */
+    private static final double CONVERGENCE = 0.5;
+
+    private final Quantizer seed;
+    private final int maxIterations;
+    private final Executor executor;
+
+    KMeansQuantizer(Quantizer seed, int maxIterations, Executor executor) {
+        this.seed = seed;
+        this.maxIterations = maxIterations;
+        this.executor = executor;
+    }
+
+    /**
+     * Populated cells of the histogram as parallel arrays, in cell coordinates
+     */
+    private static final class Cells {
+        final int size;
+        final int[] r;
+        final int[] g;
+        final int[] b;
+        final int[] weight;
+
+        Cells(ColorHistogram histogram) {
+            int[] histo = histogram.histo;
+            int size = 0;
+            for (int hval : histo) {
+                if (hval > 0) {
+                    size++;
+                }
+            }
+
+            this.size = size;
+            this.r = new int[size];
+            this.g = new int[size];
+            this.b = new int[size];
+            this.weight = new int[size];
+
+            int sigbits = histogram.sigbits;
+            int mask = (1 << sigbits) - 1;
+            int cell = 0;
+            for (int index = 0; index < histo.length; index++) {
+                if (histo[index] > 0) {
+                    r[cell] = index >> (2 * sigbits);
+                    g[cell] = (index >> sigbits) & mask;
+                    b[cell] = index & mask;
+                    weight[cell] = histo[index];
+                    cell++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums of the cells assigned to each centroid within a band of cells
+     */
+    private static final class Sums {
+        final long[] weight;
+        final long[] r;
+        final long[] g;
+        final long[] b;
+        final int[][] bounds;
+
+        Sums(int clusters) {
+            weight = new long[clusters];
+            r = new long[clusters];
+            g = new long[clusters];
+            b = new long[clusters];
+            bounds = new int[clusters][];
+        }
+
+        void add(Sums other) {
+            for (int k = 0; k < weight.length; k++) {
+                weight[k] += other.weight[k];
+                r[k] += other.r[k];
+                g[k] += other.g[k];
+                b[k] += other.b[k];
+                bounds[k] = union(bounds[k], other.bounds[k]);
+            }
+        }
+
+        private static int[] union(int[] a, int[] b) {
+            if (a == null || b == null) {
+                return a == null ? b : a;
+            }
+            return new int[] {Math.min(a[0], b[0]), Math.max(a[1], b[1]), Math.min(a[2], b[2]), Math.max(a[3], b[3]),
+                    Math.min(a[4], b[4]), Math.max(a[5], b[5])};
+        }
+    }
+
+    @Override
+    protected ColorMap cluster(ColorHistogram histogram, int maxColors) {
+        ColorMap seeds = seed.cluster(histogram, maxColors);
+        if (seeds == null) {
+            return null;
+        }
+
+        Cells cells = new Cells(histogram);
+        int mult = 1 << (8 - histogram.sigbits);
+        int clusters = seeds.size();
+
+        // centroids in cell coordinates, cell i stands for the color (i + 0.5) * mult
+        double[] cr = new double[clusters];
+        double[] cg = new double[clusters];
+        double[] cb = new double[clusters];
+        int[][] palette = seeds.palette();
+        for (int k = 0; k < clusters; k++) {
+            cr[k] = (double) palette[k][0] / mult - 0.5;
+            cg[k] = (double) palette[k][1] / mult - 0.5;
+            cb[k] = (double) palette[k][2] / mult - 0.5;
+        }
+
+        int bands = cells.size < PARALLEL_THRESHOLD ? 1
+                : Math.min(Runtime.getRuntime().availableProcessors(), cells.size / (PARALLEL_THRESHOLD / 2));
+        Sums sums = null;
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            sums = assign(cells, cr, cg, cb, bands);
+
+            double shift = 0;
+            for (int k = 0; k < clusters; k++) {
+                long weight = sums.weight[k];
+                if (weight == 0) {
+                    // an empty cluster keeps its centroid
+                    continue;
+                }
+                double r = (double) sums.r[k] / weight;
+                double g = (double) sums.g[k] / weight;
+                double b = (double) sums.b[k] / weight;
+                shift = Math.max(shift, Math.max(Math.abs(r - cr[k]), Math.max(Math.abs(g - cg[k]), Math.abs(b - cb[k]))));
+                cr[k] = r;
+                cg[k] = g;
+                cb[k] = b;
+            }
+
+            if (shift * mult < CONVERGENCE) {
+                break;
+            }
+        }
+        // the clusters of the final centroids
+        sums = assign(cells, cr, cg, cb, bands);
+
+        // Most populated colors first, so the first one is the dominant color
+        Integer[] order = new Integer[clusters];
+        for (int k = 0; k < clusters; k++) {
+            order[k] = k;
+        }
+        long[] weights = sums.weight;
+        Arrays.sort(order, (a, b) -> Long.compare(weights[b], weights[a]));
+
+        // the clusters are no boxes anymore
+        ColorMap cmap = new ColorMap.Nearest();
+        for (int k : order) {
+            if (weights[k] == 0) {
+                break;
+            }
+            int[] bounds = sums.bounds[k];
+            int[] avg = {
+                    (int) ((cr[k] + 0.5) * mult),
+                    (int) ((cg[k] + 0.5) * mult),
+                    (int) ((cb[k] + 0.5) * mult)
+            };
+            cmap.push(new MMCQ.ColorSpaceBox(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5], histogram.histo,
+                    (int) weights[k], avg));
+        }
+        return cmap;
+    }
+
+    private Sums assign(Cells cells, double[] cr, double[] cg, double[] cb, int bands) {
+        if (bands < 2) {
+            return assign(cells, cr, cg, cb, 0, cells.size);
+        }
+
+        List<CompletableFuture<Sums>> futures = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int from = (int) ((long) cells.size * band / bands);
+            int to = (int) ((long) cells.size * (band + 1) / bands);
+            futures.add(CompletableFuture.supplyAsync(() -> assign(cells, cr, cg, cb, from, to), executor));
+        }
+
+        // the sums are integers, so the result doesn't depend on the order of the bands
+        Sums sums = futures.get(0).join();
+        for (int band = 1; band < bands; band++) {
+            sums.add(futures.get(band).join());
+        }
+        return sums;
+    }
+
+    /**
+     * Assigns the cells from (inclusive) to (exclusive) to their nearest centroid and sums them up per centroid
+     */
+    private static Sums assign(Cells cells, double[] cr, double[] cg, double[] cb, int from, int to) {
+        int clusters = cr.length;
+        Sums sums = new Sums(clusters);
+
+        for (int cell = from; cell < to; cell++) {
+            int r = cells.r[cell];
+            int g = cells.g[cell];
+            int b = cells.b[cell];
+
+            int nearest = 0;
+            double distance = Double.MAX_VALUE;
+            for (int k = 0; k < clusters; k++) {
+                double dr = r - cr[k];
+                double dg = g - cg[k];
+                double db = b - cb[k];
+                double d = dr * dr + dg * dg + db * db;
+                if (d < distance) {
+                    distance = d;
+                    nearest = k;
+                }
+            }
+
+            long weight = cells.weight[cell];
+            sums.weight[nearest] += weight;
+            sums.r[nearest] += weight * r;
+            sums.g[nearest] += weight * g;
+            sums.b[nearest] += weight * b;
+
+            int[] bounds = sums.bounds[nearest];
+            if (bounds == null) {
+                sums.bounds[nearest] = new int[] {r, r, g, g, b, b};
+            } else {
+                bounds[0] = Math.min(bounds[0], r);
+                bounds[1] = Math.max(bounds[1], r);
+                bounds[2] = Math.min(bounds[2], g);
+                bounds[3] = Math.max(bounds[3], g);
+                bounds[4] = Math.min(bounds[4], b);
+                bounds[5] = Math.max(bounds[5], b);
+            }
+        }
+        return sums;
+    }
+}
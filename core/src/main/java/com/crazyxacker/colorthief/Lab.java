@@ -0,0 +1,116 @@
+package com.crazyxacker.colorthief;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Conversion of sRGB colors (D65) to CIELAB backed by precomputed tables: the linear value of every 8 bit
+ * component and the CIELAB values of every cell of a reduced color space, built on first use per precision
+ */
+final class Lab {
+    private static final double[] LINEAR = new double[256];
+    /**
+     * Tables of the cells per precision, published through the array so no thread sees a table before it is filled
+     */
+    private static final AtomicReferenceArray<float[]> CELLS = new AtomicReferenceArray<>(MMCQ.MAX_SIGBITS + 1);
+
+    private static final double XN = 0.95047;
+    private static final double YN = 1.0;
+    private static final double ZN = 1.08883;
+    private static final double EPSILON = 216.0 / 24389.0;
+    private static final double KAPPA = 24389.0 / 27.0;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            LINEAR[i] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private Lab() {
+    }
+
+    /**
+     * Converts a color
+     *
+     * @param lab array receiving L, a and b from offset on
+     */
+    static void convert(int r, int g, int b, float[] lab, int offset) {
+        double lr = LINEAR[r];
+        double lg = LINEAR[g];
+        double lb = LINEAR[b];
+
+        double fx = f((0.4124564 * lr + 0.3575761 * lg + 0.1804375 * lb) / XN);
+        double fy = f((0.2126729 * lr + 0.7151522 * lg + 0.0721750 * lb) / YN);
+        double fz = f((0.0193339 * lr + 0.1191920 * lg + 0.9503041 * lb) / ZN);
+
+        lab[offset] = (float) (116 * fy - 16);
+        lab[offset + 1] = (float) (500 * (fx - fy));
+        lab[offset + 2] = (float) (200 * (fy - fz));
+    }
+
+    private static double f(double t) {
+        return t > EPSILON ? Math.cbrt(t) : (KAPPA * t + 16) / 116;
+    }
+
+    /**
+     * CIELAB values of the centers of all cells of a reduced color space, 3 per cell in the order of
+     * {@link MMCQ#getColorIndex(int, int, int, int)}
+     *
+     * @param sigbits significant bits per color component
+     */
+    static float[] cells(int sigbits) {
+        float[] cells = CELLS.get(sigbits);
+        if (cells == null) {
+            cells = buildCells(sigbits);
+        }
+        return cells;
+    }
+
+    private static synchronized float[] buildCells(int sigbits) {
+        float[] built = CELLS.get(sigbits);
+        if (built != null) {
+            return built;
+        }
+
+        int length = 1 << sigbits;
+        int shift = 8 - sigbits;
+        int half = 1 << shift >> 1;
+        float[] cells = new float[3 * length * length * length];
+        int offset = 0;
+        for (int r = 0; r < length; r++) {
+            for (int g = 0; g < length; g++) {
+                for (int b = 0; b < length; b++, offset += 3) {
+                    convert((r << shift) + half, (g << shift) + half, (b << shift) + half, cells, offset);
+                }
+            }
+        }
+        CELLS.set(sigbits, cells);
+        return cells;
+    }
+
+    /**
+     * Squared distance of two CIELAB colors
+     *
+     * @param distance {@link ColorDistance#CIE76} or {@link ColorDistance#CIE94}
+     * @param lab1 reference color, its chroma weights the differences of CIE94
+     * @param chroma1 chroma of the reference color, <code>sqrt(a * a + b * b)</code>
+     */
+    static double distance(ColorDistance distance, float[] lab1, int offset1, double chroma1, float[] lab2, int offset2, double chroma2) {
+        double dl = lab1[offset1] - lab2[offset2];
+        double da = lab1[offset1 + 1] - lab2[offset2 + 1];
+        double db = lab1[offset1 + 2] - lab2[offset2 + 2];
+        if (distance != ColorDistance.CIE94) {
+            return dl * dl + da * da + db * db;
+        }
+
+        double dc = chroma1 - chroma2;
+        double dh2 = Math.max(0, da * da + db * db - dc * dc);
+        double sc = 1 + 0.045 * chroma1;
+        double sh = 1 + 0.015 * chroma1;
+        return dl * dl + dc * dc / (sc * sc) + dh2 / (sh * sh);
+    }
+
+    static double chroma(float[] lab, int offset) {
+        return Math.sqrt((double) lab[offset + 1] * lab[offset + 1] + (double) lab[offset + 2] * lab[offset + 2]);
+    }
+}
@@ -0,0 +1,618 @@
+/*
+ * Java Color Thief
+ * by Sven Woltmann, Fonpit AG
+ * 
+ * https://www.androidpit.com
+ * https://www.androidpit.de
+ *
+ * License
+ * -------
+ * Creative Commons Attribution 2.5 License:
+ * http://creativecommons.org/licenses/by/2.5/
+ *
+ * Thanks
+ * ------
+ * Lokesh Dhakar - for the original Color Thief JavaScript version
+ * available at http://lokeshdhakar.com/projects/color-thief/
+ */
+
+package com.crazyxacker.colorthief;
+
+import java.util.Arrays;
+
+public class MMCQ {
+
+    /**
+     * Significant bits per color component kept by the histogram by default (32768 bins)
+     */
+    public static final int DEFAULT_SIGBITS = 5;
+    /**
+     * Lowest supported histogram precision (4096 bins), e.g. for tiny thumbnails
+     */
+    public static final int MIN_SIGBITS = 4;
+    /**
+     * Highest supported histogram precision (262144 bins), e.g. for high-fidelity brand colors
+     */
+    public static final int MAX_SIGBITS = 6;
+
+    private static final int MAX_VBOX_LENGTH = 1 << MAX_SIGBITS;
+    private static final double FRACT_BY_POPULATION = 0.75;
+    private static final int MAX_ITERATIONS = 1000;
+    private static final int MAX_BOXES = 256;
+
+    private static final WorkspacePool<Workspace> WORKSPACES = new WorkspacePool<>(Workspace::new);
+
+    /**
+     * Get reduced-space color index for a pixel.
+     * 
+     * @param r
+     *            the red value
+     * @param g
+     *            the green value
+     * @param b
+     *            the blue value
+     * @param sigbits
+     *            the precision of the reduced space
+     * 
+     * @return the color index
+     */
+    static int getColorIndex(int r, int g, int b, int sigbits) {
+        return (r << (2 * sigbits)) + (g << sigbits) + b;
+    }
+
+    static void checkSigbits(int sigbits) {
+        if (sigbits < MIN_SIGBITS || sigbits > MAX_SIGBITS) {
+            throw new IllegalArgumentException("Specified sigbits must be between " + MIN_SIGBITS + " and " + MAX_SIGBITS + ".");
+        }
+    }
+
+    /**
+     * Number of pixels of the histogram within a box.
+     */
+    static int count(int[] histo, int sigbits, int r1, int r2, int g1, int g2, int b1, int b2) {
+        int npix = 0;
+        int i, j, k, index;
+
+        for (i = r1; i <= r2; i++) {
+            for (j = g1; j <= g2; j++) {
+                for (k = b1; k <= b2; k++) {
+                    index = getColorIndex(i, j, k, sigbits);
+                    npix += histo[index];
+                }
+            }
+        }
+
+        return npix;
+    }
+
+    /**
+     * 3D color space box.
+     */
+    public static class ColorSpaceBox {
+        int r1;
+        int r2;
+        int g1;
+        int g2;
+        int b1;
+        int b2;
+
+        private final int[] histo;
+        final int sigbits;
+
+        private int[] _avg;
+        private int _volume = -1;
+        private int _count = -1;
+
+        public ColorSpaceBox(int r1, int r2, int g1, int g2, int b1, int b2, int[] histo) {
+            this.r1 = r1;
+            this.r2 = r2;
+            this.g1 = g1;
+            this.g2 = g2;
+            this.b1 = b1;
+            this.b2 = b2;
+
+            this.histo = histo;
+            this.sigbits = Integer.numberOfTrailingZeros(histo.length) / 3;
+        }
+
+        ColorSpaceBox(int r1, int r2, int g1, int g2, int b1, int b2, int[] histo, int count, int[] avg) {
+            this(r1, r2, g1, g2, b1, b2, histo);
+            this._count = count;
+            this._avg = avg;
+        }
+
+        @Override
+        public String toString() {
+            return "r1: " + r1 + " / r2: " + r2 + " / g1: " + g1 + " / g2: " + g2 + " / b1: " + b1 + " / b2: " + b2;
+        }
+
+        public int volume(boolean force) {
+            if (_volume < 0 || force) {
+                _volume = ((r2 - r1 + 1) * (g2 - g1 + 1) * (b2 - b1 + 1));
+            }
+
+            return _volume;
+        }
+
+        /**
+         * Number of pixels within the box. Boxes of a quantizer come with their population, a forced or missing one
+         * is counted by scanning the cells of the box, since a box keeps only the histogram and not the moment
+         * tables of the run it came from
+         */
+        public int count(boolean force) {
+            if (_count < 0 || force) {
+                _count = MMCQ.count(histo, sigbits, r1, r2, g1, g2, b1, b2);
+            }
+
+            return _count;
+        }
+
+        @Override
+        public ColorSpaceBox clone() {
+            return new ColorSpaceBox(r1, r2, g1, g2, b1, b2, histo);
+        }
+
+        ColorSpaceBox withCount(int count) {
+            return new ColorSpaceBox(r1, r2, g1, g2, b1, b2, histo, count, avg(false));
+        }
+
+        /**
+         * Average color of the box. Boxes of a quantizer come with their average, a forced or missing one is
+         * computed by scanning the cells of the box like {@link #count(boolean)}
+         */
+        public int[] avg(boolean force) {
+            if (_avg == null || force) {
+                int mult = 1 << (8 - sigbits);
+                int ntot = 0;
+
+                // long sums, a box of a large histogram weighted by color exceeds the int range
+                long rsum = 0;
+                long gsum = 0;
+                long bsum = 0;
+
+                int hval, i, j, k, histoindex;
+
+                for (i = r1; i <= r2; i++) {
+                    for (j = g1; j <= g2; j++) {
+                        for (k = b1; k <= b2; k++) {
+                            histoindex = getColorIndex(i, j, k, sigbits);
+                            hval = histo[histoindex];
+                            ntot += hval;
+                            // every cell stands for the center of its color range: (i + 0.5) * mult
+                            rsum += (long) hval * (i * mult + mult / 2);
+                            gsum += (long) hval * (j * mult + mult / 2);
+                            bsum += (long) hval * (k * mult + mult / 2);
+                        }
+                    }
+                }
+
+                if (ntot > 0) {
+                    _avg = new int[] {(int) (rsum / ntot), (int) (gsum / ntot), (int) (bsum / ntot)};
+                } else {
+                    _avg = new int[] {~~(mult * (r1 + r2 + 1) / 2), ~~(mult * (g1 + g2 + 1) / 2), ~~(mult * (b1 + b2 + 1) / 2)};
+                }
+            }
+
+            return _avg;
+        }
+
+        public boolean contains(int[] pixel) {
+            int rshift = 8 - sigbits;
+            int rval = pixel[0] >> rshift;
+            int gval = pixel[1] >> rshift;
+            int bval = pixel[2] >> rshift;
+
+            return (rval >= r1 && rval <= r2 && gval >= g1 && gval <= g2 && bval >= b1
+                    && bval <= b2);
+        }
+    }
+
+    /**
+     * Boxes of a running quantization stored as parallel arrays, together with the scratch buffers of the cuts.
+     * Workspaces are borrowed from a {@link WorkspacePool} for a run, so a quantization at up to the default
+     * precision allocates nothing but the resulting {@link ColorMap}, on whichever thread it runs. Moment tables of
+     * higher precisions are allocated per run, see {@link Moments#release()}.
+     * <p>
+     * Box populations, averages and partial sums come from the {@link Moments} of the histogram, so their cost
+     * doesn't depend on the box volume.
+     */
+    private static final class Workspace {
+        final int[] r1 = new int[MAX_BOXES];
+        final int[] r2 = new int[MAX_BOXES];
+        final int[] g1 = new int[MAX_BOXES];
+        final int[] g2 = new int[MAX_BOXES];
+        final int[] b1 = new int[MAX_BOXES];
+        final int[] b2 = new int[MAX_BOXES];
+        final int[] count = new int[MAX_BOXES];
+        final int[] volume = new int[MAX_BOXES];
+
+        /**
+         * Binary max-heap of box indices, the box to cut next is on top. Boxes of the same priority are ordered by
+         * their sequence number, which gives the same order as a stable sort of the queue.
+         */
+        private final int[] heap = new int[MAX_BOXES];
+        private final int[] sequence = new int[MAX_BOXES];
+        private final int[] sorted = new int[MAX_BOXES];
+        private int nextSequence;
+        private boolean byProduct;
+        int size;
+
+        final int[] partialSum = new int[MAX_VBOX_LENGTH];
+        final int[] lookAheadSum = new int[MAX_VBOX_LENGTH];
+
+        final Moments moments = new Moments();
+        private int boxes;
+
+        void reset(ColorHistogram histogram) {
+            moments.reset(histogram, false);
+            this.boxes = 0;
+            this.size = 0;
+            this.nextSequence = 0;
+            this.byProduct = false;
+        }
+
+        int population(int r1, int r2, int g1, int g2, int b1, int b2) {
+            return moments.population(r1, r2, g1, g2, b1, b2);
+        }
+
+        int[] avg(int box) {
+            return moments.avg(r1[box], r2[box], g1[box], g2[box], b1[box], b2[box], count[box]);
+        }
+
+        int add(int r1, int r2, int g1, int g2, int b1, int b2) {
+            int box = boxes++;
+            this.r1[box] = r1;
+            this.r2[box] = r2;
+            this.g1[box] = g1;
+            this.g2[box] = g2;
+            this.b1[box] = b1;
+            this.b2[box] = b2;
+            update(box);
+            return box;
+        }
+
+        int copy(int box) {
+            return add(r1[box], r2[box], g1[box], g2[box], b1[box], b2[box]);
+        }
+
+        void update(int box) {
+            count[box] = population(r1[box], r2[box], g1[box], g2[box], b1[box], b2[box]);
+            volume[box] = (r2[box] - r1[box] + 1) * (g2[box] - g1[box] + 1) * (b2[box] - b1[box] + 1);
+        }
+
+        /**
+         * Adds a box to the queue. It comes after every box of the same priority, as if appended to a sorted list.
+         */
+        void offer(int box) {
+            sequence[box] = nextSequence++;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (compare(heap[parent], box) >= 0) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = box;
+        }
+
+        int peek() {
+            return heap[0];
+        }
+
+        int poll() {
+            int top = heap[0];
+            int box = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && compare(heap[child + 1], heap[child]) > 0) {
+                    child++;
+                }
+                if (compare(box, heap[child]) >= 0) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = box;
+            return top;
+        }
+
+        /**
+         * Re-orders the queue by the product of population and volume. Boxes of the same product keep the order
+         * they had by population.
+         */
+        void orderByProduct() {
+            int count = size;
+            int[] sorted = this.sorted;
+            for (int i = count - 1; i >= 0; i--) {
+                sorted[i] = poll();
+            }
+
+            byProduct = true;
+            for (int i = 0; i < count; i++) {
+                offer(sorted[i]);
+            }
+        }
+
+        private int compare(int a, int b) {
+            int result = compare(a, b, byProduct);
+            return result != 0 ? result : Integer.compare(sequence[a], sequence[b]);
+        }
+
+        private int compare(int a, int b, boolean product) {
+            if (!product) {
+                return Integer.compare(count[a], count[b]);
+            }
+
+            // If count is 0 for both (or the same), sort by volume
+            if (count[a] == count[b]) {
+                return volume[a] - volume[b];
+            }
+
+            // Otherwise sort by products
+            return Long.compare((long) count[a] * volume[a], (long) count[b] * volume[b]);
+        }
+    }
+
+    /**
+     * Cuts a box in two. The box itself shrinks to the first part.
+     *
+     * @return index of the box with the second part or -1 if the box can't be split
+     */
+    private static int medianCutApply(Workspace ws, int vbox) {
+        // only one pixel, no split
+        if (ws.count[vbox] == 1) {
+            return -1;
+        }
+
+        int r1 = ws.r1[vbox], r2 = ws.r2[vbox];
+        int g1 = ws.g1[vbox], g2 = ws.g2[vbox];
+        int b1 = ws.b1[vbox], b2 = ws.b2[vbox];
+
+        int rw = r2 - r1 + 1;
+        int gw = g2 - g1 + 1;
+        int bw = b2 - b1 + 1;
+        int maxw = Math.max(Math.max(rw, gw), bw);
+
+        // Find the partial sum arrays along the selected axis.
+        int total = ws.count[vbox];
+        int[] partialSum = ws.partialSum;
+        Arrays.fill(partialSum, -1); // -1 = not set / 0 = 0
+        int[] lookAheadSum = ws.lookAheadSum;
+        Arrays.fill(lookAheadSum, -1); // -1 = not set / 0 = 0
+        int i;
+
+        if (maxw == rw) {
+            for (i = r1; i <= r2; i++) {
+                partialSum[i] = ws.population(r1, i, g1, g2, b1, b2);
+            }
+        } else if (maxw == gw) {
+            for (i = g1; i <= g2; i++) {
+                partialSum[i] = ws.population(r1, r2, g1, i, b1, b2);
+            }
+        } else { /* maxw == bw */
+            for (i = b1; i <= b2; i++) {
+                partialSum[i] = ws.population(r1, r2, g1, g2, b1, i);
+            }
+        }
+
+        for (i = 0; i < ws.moments.vboxLength; i++) {
+            if (partialSum[i] != -1) {
+                lookAheadSum[i] = total - partialSum[i];
+            }
+        }
+
+        // determine the cut planes
+        return maxw == rw ? doCut('r', ws, vbox, total)
+                : maxw == gw ? doCut('g', ws, vbox, total)
+                        : doCut('b', ws, vbox, total);
+    }
+
+    private static int doCut(char color, Workspace ws, int vbox, int total) {
+        int[] partialSum = ws.partialSum;
+        int[] lookAheadSum = ws.lookAheadSum;
+        int vbox_dim1;
+        int vbox_dim2;
+
+        if (color == 'r') {
+            vbox_dim1 = ws.r1[vbox];
+            vbox_dim2 = ws.r2[vbox];
+        } else if (color == 'g') {
+            vbox_dim1 = ws.g1[vbox];
+            vbox_dim2 = ws.g2[vbox];
+        } else { /* color == 'b' */
+            vbox_dim1 = ws.b1[vbox];
+            vbox_dim2 = ws.b2[vbox];
+        }
+
+        int left, right;
+        int d2, count2;
+
+        for (int i = vbox_dim1; i <= vbox_dim2; i++) {
+            if (partialSum[i] > total / 2) {
+                left = i - vbox_dim1;
+                right = vbox_dim2 - i;
+
+                if (left <= right) {
+                    d2 = Math.min(vbox_dim2 - 1, ~~(i + right / 2));
+                } else {
+                    // 2.0 and cast to int is necessary to have the same behaviour as in JavaScript
+                    d2 = Math.max(vbox_dim1, ~~((int) (i - 1 - left / 2.0)));
+                }
+
+                // avoid 0-count boxes
+                while (d2 < 0 || partialSum[d2] <= 0) {
+                    d2++;
+                }
+                count2 = lookAheadSum[d2];
+                while (count2 == 0 && d2 > 0 && partialSum[d2 - 1] > 0) {
+                    count2 = lookAheadSum[--d2];
+                }
+
+                // set dimensions
+                int vbox2 = ws.copy(vbox);
+                if (color == 'r') {
+                    ws.r2[vbox] = d2;
+                    ws.r1[vbox2] = d2 + 1;
+                } else if (color == 'g') {
+                    ws.g2[vbox] = d2;
+                    ws.g1[vbox2] = d2 + 1;
+                } else { /* color == 'b' */
+                    ws.b2[vbox] = d2;
+                    ws.b1[vbox2] = d2 + 1;
+                }
+                ws.update(vbox);
+                ws.update(vbox2);
+
+                return vbox2;
+            }
+        }
+
+        throw new RuntimeException("VBox can't be cut");
+    }
+
+    public static ColorMap quantize(int[][] pixels, int maxColors) {
+        ColorHistogram histogram = new ColorHistogram();
+        for (int[] pixel : pixels) {
+            histogram.add(pixel[0], pixel[1], pixel[2]);
+        }
+        return quantize(histogram, maxColors);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors of already decoded pixels, which are read in place
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap} or <code>null</code> if no pixel is left or maxColors is out of range
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static ColorMap quantize(PixelBuffer pixels, int maxColors, int quality, boolean ignoreWhite) {
+        return quantize(pixels, maxColors, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors of already decoded pixels, which are read in place
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap} or <code>null</code> if no pixel is left or maxColors is out of range
+     */
+    public static ColorMap quantize(PixelBuffer pixels, int maxColors, SamplingStrategy sampling, boolean ignoreWhite) {
+        return quantize(pixels, maxColors, sampling, ignoreWhite, DEFAULT_SIGBITS);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors of already decoded pixels, which are read in place
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits
+     *            significant bits per color component kept by the histogram, from {@link #MIN_SIGBITS} to
+     *            {@link #MAX_SIGBITS}. 4 is faster and good enough for thumbnails, 6 separates close shades
+     *            at the cost of a 8 times bigger histogram.
+     *
+     * @return {@link ColorMap} or <code>null</code> if no pixel is left or maxColors is out of range
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public static ColorMap quantize(PixelBuffer pixels, int maxColors, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        return quantize(ColorHistogram.of(pixels, sampling, ignoreWhite, sigbits), maxColors);
+    }
+
+    /**
+     * Quantizes an already filled histogram, so the pixels don't have to be materialized
+     *
+     * @param histogram histogram of the sampled pixels including the bounds of the occupied color space
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     *
+     * @return {@link ColorMap} or <code>null</code> if the histogram is empty or maxColors is out of range
+     */
+    public static ColorMap quantize(ColorHistogram histogram, int maxColors) {
+        // short-circuit
+        if (histogram.count() == 0 || maxColors < 2 || maxColors > 256) {
+            return null;
+        }
+
+        Workspace ws = WORKSPACES.borrow();
+        try {
+            return quantize(ws, histogram, maxColors);
+        } finally {
+            ws.moments.release();
+            WORKSPACES.release(ws);
+        }
+    }
+
+    private static ColorMap quantize(Workspace ws, ColorHistogram histogram, int maxColors) {
+        ws.reset(histogram);
+
+        // get the beginning vbox from the colors
+        ws.offer(ws.add(histogram.rmin, histogram.rmax, histogram.gmin, histogram.gmax, histogram.bmin, histogram.bmax));
+
+        // Round up to have the same behaviour as in JavaScript
+        int target = (int) Math.ceil(FRACT_BY_POPULATION * maxColors);
+
+        // first set of colors, sorted by population
+        iter(ws, target);
+
+        // Re-sort by the product of pixel occupancy times the size in color space.
+        ws.orderByProduct();
+
+        // next set - generate the median cuts using the (npix * vol) sorting.
+        if (maxColors > ws.size) {
+            iter(ws, maxColors);
+        }
+
+        // Take the highest elements first into the color map
+        ColorMap cmap = new ColorMap();
+        while (ws.size > 0) {
+            int vbox = ws.poll();
+            cmap.push(new ColorSpaceBox(ws.r1[vbox], ws.r2[vbox], ws.g1[vbox], ws.g2[vbox], ws.b1[vbox], ws.b2[vbox], ws.moments.histo, ws.count[vbox], ws.avg(vbox)));
+        }
+        return cmap;
+    }
+
+    /**
+     * Inner function to do the iteration.
+     */
+    private static void iter(Workspace ws, int target) {
+        int niters = 0;
+
+        while (niters < MAX_ITERATIONS) {
+            if (ws.count[ws.peek()] == 0) {
+                // No cut happens on an empty box and the queue wouldn't change, so stop here
+                return;
+            }
+            int vbox = ws.poll();
+
+            // do the cut
+            int vbox2 = medianCutApply(ws, vbox);
+
+            ws.offer(vbox);
+            if (vbox2 != -1) {
+                ws.offer(vbox2);
+            }
+
+            if (ws.size >= target) {
+                return;
+            }
+            if (niters++ > MAX_ITERATIONS) {
+                return;
+            }
+        }
+    }
+}
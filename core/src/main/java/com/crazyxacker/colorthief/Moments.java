@@ -0,0 +1,210 @@
+package com.crazyxacker.colorthief;
+
+/**
+ * Cumulative 3D moment tables of a {@link ColorHistogram}: the population, the population weighted by each color
+ * component and optionally by the squared color. Sums within a box come from inclusion-exclusion, so their cost
+ * doesn't depend on the box volume. The tables are 1-based, the first plane of every axis holds zeros.
+ * <p>
+ * Instances are used by one thread at a time and reused across runs through a {@link WorkspacePool}. The tables grow
+ * to the precision used, tables beyond the {@link MMCQ#DEFAULT_SIGBITS default precision} are dropped by
+ * {@link #release()} after the run, so a single run at 6 bits doesn't keep about 9 MB per pooled workspace.
+ */
+final class Moments {
+    long[] count = new long[0];
+    long[] red = new long[0];
+    long[] green = new long[0];
+    long[] blue = new long[0];
+    long[] squares = new long[0];
+
+    // running sums of the current plane while building the tables
+    private long[] area = new long[0];
+    private long[] areaRed = new long[0];
+    private long[] areaGreen = new long[0];
+    private long[] areaBlue = new long[0];
+    private long[] areaSquares = new long[0];
+
+    int[] histo;
+    int sigbits;
+    int vboxLength;
+    private int mult;
+    private int length;
+    private int size;
+
+    /**
+     * Table size up to which the tables are kept between runs
+     */
+    private static final int KEPT_SIZE = ((1 << MMCQ.DEFAULT_SIGBITS) + 1) * ((1 << MMCQ.DEFAULT_SIGBITS) + 1) * ((1 << MMCQ.DEFAULT_SIGBITS) + 1);
+
+    /**
+     * Ends a run: forgets the histogram and drops tables grown beyond the default precision
+     */
+    void release() {
+        histo = null;
+        if (count.length > KEPT_SIZE) {
+            count = red = green = blue = squares = new long[0];
+            area = areaRed = areaGreen = areaBlue = areaSquares = new long[0];
+        }
+    }
+
+    /**
+     * Builds the tables of a histogram. Only the tracked bounds of the histogram are summed up, as no median cut
+     * box exceeds them
+     *
+     * @param histogram histogram to sum up
+     * @param withSquares if <code>true</code>, the table of squared colors needed for variances is built too
+     */
+    void reset(ColorHistogram histogram, boolean withSquares) {
+        reset(histogram, withSquares, new int[] {histogram.rmin, histogram.rmax, histogram.gmin, histogram.gmax, histogram.bmin, histogram.bmax});
+    }
+
+    /**
+     * Builds the tables of a histogram within the given bounds, no box summed up later may exceed them
+     *
+     * @param histogram histogram to sum up
+     * @param withSquares if <code>true</code>, the table of squared colors needed for variances is built too
+     * @param bounds inclusive [rmin, rmax, gmin, gmax, bmin, bmax]
+     */
+    void reset(ColorHistogram histogram, boolean withSquares, int[] bounds) {
+        this.histo = histogram.histo;
+        this.sigbits = histogram.sigbits;
+        this.vboxLength = 1 << sigbits;
+        this.mult = 1 << (8 - sigbits);
+        this.length = vboxLength + 1;
+        this.size = length * length * length;
+
+        if (count.length < size) {
+            count = new long[size];
+            red = new long[size];
+            green = new long[size];
+            blue = new long[size];
+            area = new long[length];
+            areaRed = new long[length];
+            areaGreen = new long[length];
+            areaBlue = new long[length];
+        }
+        if (withSquares && squares.length < size) {
+            squares = new long[size];
+            areaSquares = new long[length];
+        }
+
+        int r1 = bounds[0], r2 = bounds[1];
+        int g1 = bounds[2], g2 = bounds[3];
+        int b1 = bounds[4], b2 = bounds[5];
+        if (r2 < r1 || g2 < g1 || b2 < b1) {
+            // every box within the bounds is empty
+            return;
+        }
+
+        clearLowerPlanes(r1, r2, g1, g2, b1, b2, withSquares);
+
+        int plane = length * length;
+        for (int r = r1; r <= r2; r++) {
+            for (int b = b1; b <= b2; b++) {
+                area[b] = 0;
+                areaRed[b] = 0;
+                areaGreen[b] = 0;
+                areaBlue[b] = 0;
+                if (withSquares) {
+                    areaSquares[b] = 0;
+                }
+            }
+
+            for (int g = g1; g <= g2; g++) {
+                long line = 0, lineRed = 0, lineGreen = 0, lineBlue = 0, lineSquares = 0;
+                int index = index(r + 1, g + 1, b1 + 1);
+                for (int b = b1; b <= b2; b++, index++) {
+                    long hval = histo[MMCQ.getColorIndex(r, g, b, sigbits)];
+                    line += hval;
+                    lineRed += hval * r;
+                    lineGreen += hval * g;
+                    lineBlue += hval * b;
+
+                    // area holds the sums of the plane up to the current row, the previous plane adds the rest
+                    count[index] = count[index - plane] + (area[b] += line);
+                    red[index] = red[index - plane] + (areaRed[b] += lineRed);
+                    green[index] = green[index - plane] + (areaGreen[b] += lineGreen);
+                    blue[index] = blue[index - plane] + (areaBlue[b] += lineBlue);
+                    if (withSquares) {
+                        lineSquares += hval * (r * r + g * g + b * b);
+                        squares[index] = squares[index - plane] + (areaSquares[b] += lineSquares);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Zeroes the first plane of every axis within the bounds, which the sums of the boxes subtract. The tables are
+     * reused, so they may hold the values of another histogram there
+     */
+    private void clearLowerPlanes(int r1, int r2, int g1, int g2, int b1, int b2, boolean withSquares) {
+        for (int g = g1; g <= g2 + 1; g++) {
+            for (int b = b1; b <= b2 + 1; b++) {
+                clear(index(r1, g, b), withSquares);
+            }
+        }
+        for (int r = r1; r <= r2 + 1; r++) {
+            for (int b = b1; b <= b2 + 1; b++) {
+                clear(index(r, g1, b), withSquares);
+            }
+            for (int g = g1; g <= g2 + 1; g++) {
+                clear(index(r, g, b1), withSquares);
+            }
+        }
+    }
+
+    private void clear(int index, boolean withSquares) {
+        count[index] = 0;
+        red[index] = 0;
+        green[index] = 0;
+        blue[index] = 0;
+        if (withSquares) {
+            squares[index] = 0;
+        }
+    }
+
+    /**
+     * Sum of a moment table within a box, bounds are inclusive
+     */
+    long sum(long[] table, int r1, int r2, int g1, int g2, int b1, int b2) {
+        if (r2 < r1 || g2 < g1 || b2 < b1) {
+            return 0;
+        }
+
+        r2++;
+        g2++;
+        b2++;
+        return table[index(r2, g2, b2)]
+                - table[index(r1, g2, b2)]
+                - table[index(r2, g1, b2)]
+                - table[index(r2, g2, b1)]
+                + table[index(r1, g1, b2)]
+                + table[index(r1, g2, b1)]
+                + table[index(r2, g1, b1)]
+                - table[index(r1, g1, b1)];
+    }
+
+    private int index(int r, int g, int b) {
+        return (r * length + g) * length + b;
+    }
+
+    int population(int r1, int r2, int g1, int g2, int b1, int b2) {
+        return (int) sum(count, r1, r2, g1, g2, b1, b2);
+    }
+
+    /**
+     * Average color of a box, as {@link MMCQ.ColorSpaceBox#avg(boolean)} computes it
+     *
+     * @param ntot population of the box
+     */
+    int[] avg(int r1, int r2, int g1, int g2, int b1, int b2, long ntot) {
+        if (ntot > 0) {
+            // every histogram cell stands for the center of its color range: (i + 0.5) * mult
+            long rsum = mult * sum(red, r1, r2, g1, g2, b1, b2) + mult / 2 * ntot;
+            long gsum = mult * sum(green, r1, r2, g1, g2, b1, b2) + mult / 2 * ntot;
+            long bsum = mult * sum(blue, r1, r2, g1, g2, b1, b2) + mult / 2 * ntot;
+            return new int[] {(int) (rsum / ntot), (int) (gsum / ntot), (int) (bsum / ntot)};
+        }
+        return new int[] {~~(mult * (r1 + r2 + 1) / 2), ~~(mult * (g1 + g2 + 1) / 2), ~~(mult * (b1 + b2 + 1) / 2)};
+    }
+}
@@ -0,0 +1,404 @@
+package com.crazyxacker.colorthief;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent store of palettes, e.g. of all images of a gallery, so they don't have to be decoded and quantized
+ * again on every start.
+ * <p>
+ * The store is a file of fixed-size records, memory-mapped as a whole: a header followed by one record per image,
+ * holding a 64 bit key, a 64 bit check, the size and modification time of the image file and up to
+ * <code>maxColors</code> packed palette colors with their populations. Images are keyed by a hash of their absolute
+ * path, checked against a second, independent hash of it, and their record is only used while the size and
+ * modification time of the file are unchanged; images without a file can be stored under a content hash of their
+ * own. Only the keys are read on {@link #open(Path)}, the palettes are read from the mapped file on demand. A store
+ * holds as many records as fit into the 2 GB a single mapping can address.
+ * <pre>
+ * try (PaletteStore store = PaletteStore.open(Paths.get("palettes.bin"))) {
+ *     PaletteStore.Palette palette = store.get(image);
+ *     if (palette == null) {
+ *         store.put(image, ColorThief.getColorMap(image, 256, 8, 10, true));
+ *     }
+ * }
+ * </pre>
+ * Stores are thread-safe. A store file is locked while it is open, so it can't be opened by several stores at the
+ * same time.
+ */
+public final class PaletteStore implements Closeable {
+    public static final int DEFAULT_MAX_COLORS = 16;
+
+    /**
+     * "CTS" and the version of the file format
+     */
+    private static final int MAGIC = 0x43545302;
+    private static final int HEADER_SIZE = 16;
+    private static final int KEY_SIZE = 8 + 8 + 8 + 8 + 4;
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * Check, size and modification time of records stored under a content hash
+     */
+    private static final long NO_FILE = -1;
+
+    private final FileChannel channel;
+    private final int maxColors;
+    private final int recordSize;
+    private final int maxCapacity;
+    private final Map<Long, Integer> index = new HashMap<>();
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    private PaletteStore(FileChannel channel, int maxColors, int count) {
+        this.channel = channel;
+        this.maxColors = maxColors;
+        this.recordSize = KEY_SIZE + 8 * maxColors;
+        this.maxCapacity = (Integer.MAX_VALUE - HEADER_SIZE) / recordSize;
+        this.count = count;
+    }
+
+    /**
+     * Opens a store, or creates it with {@value #DEFAULT_MAX_COLORS} colors per palette
+     *
+     * @param file the store file
+     *
+     * @throws IOException if the file can't be opened, is opened by another store or is not a palette store
+     */
+    public static PaletteStore open(Path file) throws IOException {
+        return open(file, DEFAULT_MAX_COLORS);
+    }
+
+    /**
+     * Opens a store, or creates it
+     *
+     * @param file the store file
+     * @param maxColors colors per palette of a new store, palettes with more colors are stored without their least
+     *                  populated ones. An existing store keeps its own number.
+     *
+     * @throws IOException if the file can't be opened, is opened by another store or is not a palette store
+     * @throws IllegalArgumentException if maxColors is not between 1 and 256
+     */
+    public static PaletteStore open(Path file, int maxColors) throws IOException {
+        if (maxColors < 1 || maxColors > 256) {
+            throw new IllegalArgumentException("Specified maxColors must be between 1 and 256.");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock(channel);
+
+            PaletteStore store;
+            if (channel.size() == 0) {
+                store = new PaletteStore(channel, maxColors, 0);
+                store.map(INITIAL_CAPACITY);
+                store.buffer.putInt(0, MAGIC);
+                store.buffer.putInt(4, maxColors);
+                store.buffer.putInt(8, 0);
+            } else {
+                MappedByteBuffer header = channel.size() >= HEADER_SIZE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE) : null;
+                if (header == null || header.getInt(0) != MAGIC) {
+                    throw new IOException("Specified file is not a palette store.");
+                }
+                int storedMaxColors = header.getInt(4);
+                int storedCount = header.getInt(8);
+                if (storedMaxColors < 1 || storedMaxColors > 256 || storedCount < 0
+                        || HEADER_SIZE + (long) storedCount * (KEY_SIZE + 8 * storedMaxColors) > channel.size()) {
+                    throw new IOException("Specified file is not a valid palette store.");
+                }
+
+                store = new PaletteStore(channel, storedMaxColors, storedCount);
+                if (storedCount > store.maxCapacity) {
+                    throw new IOException("Specified file is not a valid palette store.");
+                }
+                long fileCapacity = (channel.size() - HEADER_SIZE) / store.recordSize;
+                store.map((int) Math.min(Math.max(INITIAL_CAPACITY, fileCapacity), store.maxCapacity));
+                for (int i = 0; i < storedCount; i++) {
+                    int offset = store.offset(i);
+                    int colorCount = store.buffer.getInt(offset + 32);
+                    if (colorCount < 0 || colorCount > storedMaxColors) {
+                        throw new IOException("Specified file is not a valid palette store.");
+                    }
+                    store.index.put(store.buffer.getLong(offset), i);
+                }
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Locks the whole file until the channel is closed
+     */
+    private static void lock(FileChannel channel) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException("Specified file is opened by another palette store.");
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * recordSize);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Offset of a record within the mapping, always addressable as the capacity is at most maxCapacity
+     */
+    private int offset(int record) {
+        return Math.toIntExact(HEADER_SIZE + (long) record * recordSize);
+    }
+
+    /**
+     * Reads the stored palette of an image file
+     *
+     * @param image the image file
+     *
+     * @return the palette or <code>null</code> if none is stored or the file has changed since
+     * @throws IOException if the attributes of the file can't be read
+     */
+    public synchronized Palette get(Path image) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        return get(pathKey(image), pathCheck(image), attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Reads the palette stored under a content hash
+     *
+     * @param contentHash hash of the image content, see {@link #put(long, ColorMap)}
+     *
+     * @return the palette or <code>null</code> if none is stored
+     */
+    public synchronized Palette get(long contentHash) {
+        return get(contentHash, NO_FILE, NO_FILE, NO_FILE);
+    }
+
+    private Palette get(long key, long check, long size, long modified) {
+        checkOpen();
+        Integer record = index.get(key);
+        if (record == null) {
+            return null;
+        }
+
+        int offset = offset(record);
+        if (buffer.getLong(offset + 8) != check || buffer.getLong(offset + 16) != size || buffer.getLong(offset + 24) != modified) {
+            return null;
+        }
+
+        int colorCount = buffer.getInt(offset + 32);
+        int[] colors = new int[colorCount];
+        int[] populations = new int[colorCount];
+        for (int i = 0, colorOffset = offset + KEY_SIZE; i < colorCount; i++, colorOffset += 8) {
+            colors[i] = buffer.getInt(colorOffset);
+            populations[i] = buffer.getInt(colorOffset + 4);
+        }
+        return new Palette(colors, populations);
+    }
+
+    /**
+     * Stores the palette of an image file, replacing a previous one
+     *
+     * @param image the image file
+     * @param colorMap {@link ColorMap} of the image, <code>null</code> stores an empty palette, e.g. for images
+     *                 without a color that isn't ignored
+     *
+     * @throws IOException if the attributes of the file can't be read or the store can't grow or is full
+     */
+    public synchronized void put(Path image, ColorMap colorMap) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        put(pathKey(image), pathCheck(image), attributes.size(), attributes.lastModifiedTime().toMillis(), colorMap);
+    }
+
+    /**
+     * Stores a palette under a content hash, e.g. of images that don't come from a file
+     *
+     * @param contentHash hash of the image content, computed by the caller
+     * @param colorMap {@link ColorMap} of the image, <code>null</code> stores an empty palette
+     *
+     * @throws IOException if the store can't grow or is full
+     */
+    public synchronized void put(long contentHash, ColorMap colorMap) throws IOException {
+        put(contentHash, NO_FILE, NO_FILE, NO_FILE, colorMap);
+    }
+
+    private void put(long key, long check, long size, long modified, ColorMap colorMap) throws IOException {
+        checkOpen();
+        Integer record = index.get(key);
+        boolean append = record == null;
+        if (append) {
+            if (count == maxCapacity) {
+                throw new IOException("Palette store is full.");
+            }
+            if (count == capacity) {
+                map((int) Math.min(2L * capacity, maxCapacity));
+            }
+            record = count;
+        }
+
+        int offset = offset(record);
+        buffer.putLong(offset, key);
+        buffer.putLong(offset + 8, check);
+        buffer.putLong(offset + 16, size);
+        buffer.putLong(offset + 24, modified);
+
+        int[] stored = storedBoxes(colorMap);
+        buffer.putInt(offset + 32, stored.length);
+        for (int i = 0, colorOffset = offset + KEY_SIZE; i < stored.length; i++, colorOffset += 8) {
+            MMCQ.ColorSpaceBox box = colorMap.boxes.get(stored[i]);
+            int[] color = box.avg(false);
+            buffer.putInt(colorOffset, (color[0] << 16) | (color[1] << 8) | color[2]);
+            buffer.putInt(colorOffset + 4, box.count(false));
+        }
+
+        // the record is complete before it is counted
+        if (append) {
+            count++;
+            buffer.putInt(8, count);
+            index.put(key, record);
+        }
+    }
+
+    /**
+     * Indices of the boxes to store in the order of the color map, without the least populated ones beyond
+     * maxColors
+     */
+    private int[] storedBoxes(ColorMap colorMap) {
+        int size = colorMap != null ? colorMap.size() : 0;
+        if (size <= maxColors) {
+            int[] stored = new int[size];
+            Arrays.setAll(stored, i -> i);
+            return stored;
+        }
+
+        Integer[] order = new Integer[size];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Integer.compare(colorMap.boxes.get(b).count(false), colorMap.boxes.get(a).count(false)));
+        int[] stored = new int[maxColors];
+        for (int i = 0; i < maxColors; i++) {
+            stored[i] = order[i];
+        }
+        Arrays.sort(stored);
+        return stored;
+    }
+
+    /**
+     * Number of stored palettes
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    public int getMaxColors() {
+        return maxColors;
+    }
+
+    /**
+     * Writes the changes to the storage device
+     */
+    public synchronized void flush() {
+        checkOpen();
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("Palette store is closed.");
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the absolute path of a file
+     */
+    private static long pathKey(Path image) {
+        String path = image.toAbsolutePath().normalize().toString();
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash = (hash ^ path.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Second 64 bit hash of the absolute path of a file, independent of {@link #pathKey(Path)}: a polynomial hash
+     * of the characters, finished with the mix of MurmurHash3
+     */
+    private static long pathCheck(Path image) {
+        String path = image.toAbsolutePath().normalize().toString();
+        long hash = path.length();
+        for (int i = 0; i < path.length(); i++) {
+            hash = hash * 0x9E3779B97F4A7C15L + path.charAt(i);
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Stored palette, in the order of the {@link ColorMap} it was stored from
+     */
+    public static final class Palette {
+        private final int[] colors;
+        private final int[] populations;
+
+        Palette(int[] colors, int[] populations) {
+            this.colors = colors;
+            this.populations = populations;
+        }
+
+        public int size() {
+            return colors.length;
+        }
+
+        /**
+         * @return packed RGB colors
+         */
+        public int[] getColors() {
+            return colors.clone();
+        }
+
+        /**
+         * @return number of sampled pixels of every color
+         */
+        public int[] getPopulations() {
+            return populations.clone();
+        }
+
+        /**
+         * @return colors as [r, g, b], like {@link ColorMap#palette()}
+         */
+        public int[][] palette() {
+            int[][] palette = new int[colors.length][];
+            for (int i = 0; i < colors.length; i++) {
+                palette[i] = new int[] {colors[i] >> 16 & 0xFF, colors[i] >> 8 & 0xFF, colors[i] & 0xFF};
+            }
+            return palette;
+        }
+    }
+}
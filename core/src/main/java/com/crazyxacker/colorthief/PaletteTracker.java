@@ -0,0 +1,177 @@
+package com.crazyxacker.colorthief;
+
+/**
+ * Keeps the palette of a stream of frames, e.g. of a video or an animation, stable. Every frame is added to a
+ * histogram whose older content decays exponentially, and the palette is only quantized again once this histogram
+ * has drifted far enough from the one of the current palette. A frame costs one pass over its samples and one over
+ * the histogram bins, a new palette is computed only on scene changes.
+ * <p>
+ * The drift is the share of pixels that would have to move to other bins to turn the histogram of the current
+ * palette into the current one (total variation distance), from 0 for the same color distribution to 1 for
+ * distributions without any common color. Trackers are not thread-safe.
+ */
+public class PaletteTracker {
+    public static final double DEFAULT_DECAY = 0.9;
+    public static final double DEFAULT_DRIFT_THRESHOLD = 0.1;
+
+    private static final double MAX_TOTAL = 1 << 30;
+
+    private final int colorCount;
+    private final double decay;
+    private final double driftThreshold;
+    private final Quantizer quantizer;
+
+    private double[] weights;
+    private double total;
+    private double[] reference;
+    private double referenceTotal;
+    private ColorHistogram frame;
+    private ColorMap colorMap;
+    private double drift;
+
+    /**
+     * Tracker with a decay of {@link #DEFAULT_DECAY} and a drift threshold of {@link #DEFAULT_DRIFT_THRESHOLD}
+     *
+     * @param colorCount size of the palette (minimum 2, maximum 256)
+     *
+     * @throws IllegalArgumentException if colorCount is out of range
+     */
+    public PaletteTracker(int colorCount) {
+        this(colorCount, DEFAULT_DECAY, DEFAULT_DRIFT_THRESHOLD, Quantizer.medianCut());
+    }
+
+    /**
+     * @param colorCount size of the palette (minimum 2, maximum 256)
+     * @param decay share of the histogram that is kept per frame, between 0 (only the latest frame counts) and 1
+     *              (exclusive). The histogram covers about <code>1 / (1 - decay)</code> frames.
+     * @param driftThreshold drift from 0 to 1 above which the palette is computed again. The smaller it is, the
+     *                       faster the palette follows the frames and the more often it changes.
+     * @param quantizer {@link Quantizer} that computes the palettes
+     *
+     * @throws IllegalArgumentException if colorCount, decay or driftThreshold are out of range
+     */
+    public PaletteTracker(int colorCount, double decay, double driftThreshold, Quantizer quantizer) {
+        if (colorCount < 2 || colorCount > 256) {
+            throw new IllegalArgumentException("Specified colorCount must be between 2 and 256.");
+        }
+        if (!(decay >= 0 && decay < 1)) {
+            throw new IllegalArgumentException("Specified decay must be between 0 (inclusive) and 1 (exclusive).");
+        }
+        if (!(driftThreshold >= 0 && driftThreshold <= 1)) {
+            throw new IllegalArgumentException("Specified driftThreshold must be between 0 and 1.");
+        }
+        this.colorCount = colorCount;
+        this.decay = decay;
+        this.driftThreshold = driftThreshold;
+        this.quantizer = quantizer;
+    }
+
+    /**
+     * Adds the samples of a frame
+     *
+     * @param pixels {@link PixelBuffer} of the frame
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use, e.g. {@link SamplingStrategy#budget(int)}
+     *                 for a fixed cost per frame
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return the current {@link ColorMap} or <code>null</code> if no frame had pixels to use yet
+     */
+    public ColorMap update(PixelBuffer pixels, SamplingStrategy sampling, boolean ignoreWhite) {
+        if (frame == null) {
+            frame = new ColorHistogram(weights != null ? Integer.numberOfTrailingZeros(weights.length) / 3 : MMCQ.DEFAULT_SIGBITS);
+        } else {
+            frame.clear();
+        }
+        SamplingStrategy.Plan plan = sampling.plan(pixels.width, pixels.height);
+        return update(pixels.fillHistogram(frame, plan, 0, pixels.height, ignoreWhite));
+    }
+
+    /**
+     * Adds the histogram of a frame
+     *
+     * @param histogram {@link ColorHistogram} of the frame, it isn't changed. All frames need the same sigbits.
+     *
+     * @return the current {@link ColorMap} or <code>null</code> if no frame had pixels to use yet
+     * @throws IllegalArgumentException if the histogram has another sigbits than the previous ones
+     */
+    public ColorMap update(ColorHistogram histogram) {
+        int[] histo = histogram.histo;
+        if (weights == null) {
+            weights = new double[histo.length];
+            reference = new double[histo.length];
+        } else if (weights.length != histo.length) {
+            throw new IllegalArgumentException("Specified histogram must have the same sigbits.");
+        }
+
+        // decay the history, add the frame and measure the distance to the histogram of the palette in one pass
+        double[] weights = this.weights;
+        double[] reference = this.reference;
+        double total = this.total * decay + histogram.count();
+        boolean measure = colorMap != null && total > 0;
+        double distance = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double weight = weights[i] * decay + histo[i];
+            weights[i] = weight;
+            if (measure && (weight != 0 || reference[i] != 0)) {
+                distance += Math.abs(weight / total - reference[i] / referenceTotal);
+            }
+        }
+        this.total = total;
+        if (total == 0) {
+            return colorMap;
+        }
+        drift = colorMap != null ? distance / 2 : 1;
+
+        if (drift > driftThreshold || colorMap == null) {
+            recompute();
+        }
+        return colorMap;
+    }
+
+    private void recompute() {
+        // bins that decayed below half a pixel are gone, huge histories are scaled down to fit into int counts
+        double scale = Math.min(1, MAX_TOTAL / total);
+        int[] bins = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            bins[i] = (int) Math.round(weights[i] * scale);
+        }
+
+        int sigbits = Integer.numberOfTrailingZeros(bins.length) / 3;
+        ColorMap next = quantizer.quantize(ColorHistogram.ofBins(sigbits, bins), colorCount);
+        if (next == null) {
+            return;
+        }
+
+        colorMap = next;
+        System.arraycopy(weights, 0, reference, 0, weights.length);
+        referenceTotal = total;
+        drift = 0;
+    }
+
+    /**
+     * @return the current {@link ColorMap} or <code>null</code> if no frame had pixels to use yet
+     */
+    public ColorMap getColorMap() {
+        return colorMap;
+    }
+
+    /**
+     * @return drift of the histogram from the one of the current palette, measured at the latest frame
+     */
+    public double getDrift() {
+        return drift;
+    }
+
+    /**
+     * Forgets all frames, e.g. on a cut to another video
+     */
+    public void reset() {
+        weights = null;
+        reference = null;
+        frame = null;
+        total = 0;
+        referenceTotal = 0;
+        colorMap = null;
+        drift = 0;
+    }
+}
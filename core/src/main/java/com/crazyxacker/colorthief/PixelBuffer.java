@@ -0,0 +1,336 @@
+package com.crazyxacker.colorthief;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Already decoded pixels that are read in place, without copying them and without the JavaFX toolkit
+ */
+public abstract class PixelBuffer {
+    final int width;
+    final int height;
+
+    PixelBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Packed ARGB pixels, as produced by {@code BufferedImage.getRGB} or {@code PixelFormat.getIntArgbInstance()}
+     *
+     * @param pixels pixels, row by row
+     * @param width width of the image
+     * @param height height of the image
+     *
+     * @return {@link PixelBuffer}
+     * @throws IllegalArgumentException if the array is too small for the image
+     */
+    public static PixelBuffer ofArgb(int[] pixels, int width, int height) {
+        return ofArgb(pixels, 0, width, height, width);
+    }
+
+    /**
+     * Packed ARGB pixels, as produced by {@code BufferedImage.getRGB} or {@code PixelFormat.getIntArgbInstance()}
+     *
+     * @param pixels pixels, row by row
+     * @param offset index of the first pixel
+     * @param width width of the image
+     * @param height height of the image
+     * @param stride distance between the starts of two rows, in pixels
+     *
+     * @return {@link PixelBuffer}
+     * @throws IllegalArgumentException if the array is too small for the image
+     */
+    public static PixelBuffer ofArgb(int[] pixels, int offset, int width, int height, int stride) {
+        checkCapacity(pixels.length, offset, width, height, stride, 1);
+        return new IntArrayPixels(pixels, offset, width, height, stride);
+    }
+
+    /**
+     * Packed ARGB pixels starting at the current position of the buffer
+     *
+     * @param buffer pixels, row by row
+     * @param width width of the image
+     * @param height height of the image
+     * @param stride distance between the starts of two rows, in pixels
+     *
+     * @return {@link PixelBuffer}
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public static PixelBuffer ofArgb(IntBuffer buffer, int width, int height, int stride) {
+        checkCapacity(buffer.limit(), buffer.position(), width, height, stride, 1);
+        return new IntBufferPixels(buffer, buffer.position(), width, height, stride);
+    }
+
+    /**
+     * Pixels of 4 bytes in blue, green, red, alpha order starting at the current position of the buffer, as produced
+     * by {@code PixelFormat.getByteBgraInstance()}
+     *
+     * @param buffer pixels, row by row
+     * @param width width of the image
+     * @param height height of the image
+     * @param stride distance between the starts of two rows, in bytes
+     *
+     * @return {@link PixelBuffer}
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public static PixelBuffer ofBgra(ByteBuffer buffer, int width, int height, int stride) {
+        return ofBytes(buffer, width, height, stride, 4, 2, 1, 0);
+    }
+
+    /**
+     * Pixels of 4 bytes in red, green, blue, alpha order starting at the current position of the buffer
+     *
+     * @param buffer pixels, row by row
+     * @param width width of the image
+     * @param height height of the image
+     * @param stride distance between the starts of two rows, in bytes
+     *
+     * @return {@link PixelBuffer}
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public static PixelBuffer ofRgba(ByteBuffer buffer, int width, int height, int stride) {
+        return ofBytes(buffer, width, height, stride, 4, 0, 1, 2);
+    }
+
+    /**
+     * Pixels of 3 bytes in red, green, blue order starting at the current position of the buffer
+     *
+     * @param buffer pixels, row by row
+     * @param width width of the image
+     * @param height height of the image
+     * @param stride distance between the starts of two rows, in bytes
+     *
+     * @return {@link PixelBuffer}
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public static PixelBuffer ofRgb(ByteBuffer buffer, int width, int height, int stride) {
+        return ofBytes(buffer, width, height, stride, 3, 0, 1, 2);
+    }
+
+    private static PixelBuffer ofBytes(
+            ByteBuffer buffer,
+            int width,
+            int height,
+            int stride,
+            int pixelSize,
+            int redOffset,
+            int greenOffset,
+            int blueOffset) {
+        checkCapacity(buffer.limit(), buffer.position(), width, height, stride, pixelSize);
+        return new BytePixels(buffer, buffer.position(), width, height, stride, pixelSize, redOffset, greenOffset, blueOffset);
+    }
+
+    private static void checkCapacity(int length, int offset, int width, int height, int stride, int pixelSize) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Specified width and height should be greater then 0.");
+        }
+        if (offset < 0 || stride < width * pixelSize
+                || offset + (long) (height - 1) * stride + (long) width * pixelSize > length) {
+            throw new IllegalArgumentException("Specified buffer is too small for the image.");
+        }
+    }
+
+    /**
+     * @return width of the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Region of the image that shares the pixels of this buffer
+     *
+     * @param x left column of the region
+     * @param y top row of the region
+     * @param width width of the region
+     * @param height height of the region
+     *
+     * @return {@link PixelBuffer} of the region
+     * @throws IllegalArgumentException if the region is not within the image bounds
+     */
+    public PixelBuffer region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 1 || height < 1 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Specified region must be within the image bounds.");
+        }
+        return region0(x, y, width, height);
+    }
+
+    abstract PixelBuffer region0(int x, int y, int width, int height);
+
+    /**
+     * Adds the given pixels of a row to the histogram
+     *
+     * @param histogram {@link ColorHistogram} to fill
+     * @param y row
+     * @param columns columns of the pixels in ascending order
+     * @param count number of columns
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     */
+    abstract void addRow(ColorHistogram histogram, int y, int[] columns, int count, boolean ignoreWhite);
+
+    /**
+     * Reads all pixels of a row
+     *
+     * @param y row
+     * @param argb buffer of at least the width receiving the packed ARGB pixels
+     */
+    abstract void readRow(int y, int[] argb);
+
+    /**
+     * Adds the sampled pixels of the rows from y1 (inclusive) to y2 (exclusive) to the histogram
+     *
+     * @param histogram {@link ColorHistogram} to fill
+     * @param plan {@link SamplingStrategy.Plan} of the whole image
+     * @param y1 first row
+     * @param y2 row after the last one
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return the given histogram
+     */
+    ColorHistogram fillHistogram(ColorHistogram histogram, SamplingStrategy.Plan plan, int y1, int y2, boolean ignoreWhite) {
+        int[] columns = new int[width];
+        for (int y = y1; y < y2; y++) {
+            int count = plan.columns(y, columns);
+            if (count > 0) {
+                addRow(histogram, y, columns, count, ignoreWhite);
+            }
+        }
+        return histogram;
+    }
+
+    private static class IntArrayPixels extends PixelBuffer {
+        private final int[] pixels;
+        private final int offset;
+        private final int stride;
+
+        IntArrayPixels(int[] pixels, int offset, int width, int height, int stride) {
+            super(width, height);
+            this.pixels = pixels;
+            this.offset = offset;
+            this.stride = stride;
+        }
+
+        @Override
+        PixelBuffer region0(int x, int y, int width, int height) {
+            return new IntArrayPixels(pixels, offset + y * stride + x, width, height, stride);
+        }
+
+        @Override
+        void addRow(ColorHistogram histogram, int y, int[] columns, int count, boolean ignoreWhite) {
+            int rowOffset = offset + y * stride;
+            for (int i = 0; i < count; i++) {
+                histogram.addArgb(pixels[rowOffset + columns[i]], ignoreWhite);
+            }
+        }
+
+        @Override
+        void readRow(int y, int[] argb) {
+            System.arraycopy(pixels, offset + y * stride, argb, 0, width);
+        }
+    }
+
+    private static class IntBufferPixels extends PixelBuffer {
+        private final IntBuffer buffer;
+        private final int offset;
+        private final int stride;
+
+        IntBufferPixels(IntBuffer buffer, int offset, int width, int height, int stride) {
+            super(width, height);
+            this.buffer = buffer;
+            this.offset = offset;
+            this.stride = stride;
+        }
+
+        @Override
+        PixelBuffer region0(int x, int y, int width, int height) {
+            return new IntBufferPixels(buffer, offset + y * stride + x, width, height, stride);
+        }
+
+        @Override
+        void addRow(ColorHistogram histogram, int y, int[] columns, int count, boolean ignoreWhite) {
+            int rowOffset = offset + y * stride;
+            for (int i = 0; i < count; i++) {
+                histogram.addArgb(buffer.get(rowOffset + columns[i]), ignoreWhite);
+            }
+        }
+
+        @Override
+        void readRow(int y, int[] argb) {
+            int rowOffset = offset + y * stride;
+            for (int x = 0; x < width; x++) {
+                argb[x] = buffer.get(rowOffset + x);
+            }
+        }
+    }
+
+    private static class BytePixels extends PixelBuffer {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int stride;
+        private final int pixelSize;
+        private final int redOffset;
+        private final int greenOffset;
+        private final int blueOffset;
+
+        BytePixels(
+                ByteBuffer buffer,
+                int offset,
+                int width,
+                int height,
+                int stride,
+                int pixelSize,
+                int redOffset,
+                int greenOffset,
+                int blueOffset) {
+            super(width, height);
+            this.buffer = buffer;
+            this.offset = offset;
+            this.stride = stride;
+            this.pixelSize = pixelSize;
+            this.redOffset = redOffset;
+            this.greenOffset = greenOffset;
+            this.blueOffset = blueOffset;
+        }
+
+        @Override
+        PixelBuffer region0(int x, int y, int width, int height) {
+            return new BytePixels(buffer, offset + y * stride + x * pixelSize, width, height, stride,
+                    pixelSize, redOffset, greenOffset, blueOffset);
+        }
+
+        @Override
+        void addRow(ColorHistogram histogram, int y, int[] columns, int count, boolean ignoreWhite) {
+            int rowOffset = offset + y * stride;
+            for (int i = 0; i < count; i++) {
+                int index = rowOffset + columns[i] * pixelSize;
+                histogram.addArgb(
+                        (buffer.get(index + redOffset) & 0xFF) << 16
+                                | (buffer.get(index + greenOffset) & 0xFF) << 8
+                                | buffer.get(index + blueOffset) & 0xFF,
+                        ignoreWhite
+                );
+            }
+        }
+
+        @Override
+        void readRow(int y, int[] argb) {
+            int index = offset + y * stride;
+            for (int x = 0; x < width; x++, index += pixelSize) {
+                // the alpha channel is the last byte of 4 byte pixels
+                int alpha = pixelSize == 4 ? buffer.get(index + 3) & 0xFF : 0xFF;
+                argb[x] = alpha << 24
+                        | (buffer.get(index + redOffset) & 0xFF) << 16
+                        | (buffer.get(index + greenOffset) & 0xFF) << 8
+                        | buffer.get(index + blueOffset) & 0xFF;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.crazyxacker.colorthief;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Clusters the colors of a histogram into a palette. {@link #medianCut()} is the engine of the original Color
+ * Thief and the default of every method that doesn't take a quantizer. Custom engines implement
+ * {@link #cluster(ColorHistogram, int)}
+ */
+public abstract class Quantizer {
+    private static final Quantizer MEDIAN_CUT = new Quantizer() {
+        @Override
+        protected ColorMap cluster(ColorHistogram histogram, int maxColors) {
+            return MMCQ.quantize(histogram, maxColors);
+        }
+    };
+    private static final Quantizer WU = new WuQuantizer();
+
+    /**
+     * Quantizes an already filled histogram. If the pixels have no more than maxColors distinct colors, e.g. in
+     * logos or icons, these colors are returned exactly without clustering
+     *
+     * @param histogram histogram of the sampled pixels
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     *
+     * @return {@link ColorMap} or <code>null</code> if the histogram is empty or maxColors is out of range
+     */
+    public ColorMap quantize(ColorHistogram histogram, int maxColors) {
+        if (histogram.count() > 0 && maxColors >= 2 && maxColors <= UniqueColors.MAX_COLORS) {
+            ColorMap exact = histogram.exactColorMap(maxColors);
+            if (exact != null) {
+                return exact;
+            }
+        }
+        return cluster(histogram, maxColors);
+    }
+
+    /**
+     * Clusters the colors of an already filled histogram
+     *
+     * @param histogram histogram of the sampled pixels
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     *
+     * @return {@link ColorMap} or <code>null</code> if the histogram is empty or maxColors is out of range
+     */
+    protected abstract ColorMap cluster(ColorHistogram histogram, int maxColors);
+
+    /**
+     * Quantizes already decoded pixels, which are read in place
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits significant bits per color component kept by the histogram, from {@link MMCQ#MIN_SIGBITS} to
+     *                {@link MMCQ#MAX_SIGBITS}
+     *
+     * @return {@link ColorMap} or <code>null</code> if no pixel is left or maxColors is out of range
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public ColorMap quantize(PixelBuffer pixels, int maxColors, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        return quantize(ColorHistogram.of(pixels, sampling, ignoreWhite, sigbits), maxColors);
+    }
+
+    /**
+     * Quantizes a list of pixels
+     *
+     * @param pixels pixels as <code>{r, g, b}</code> arrays
+     * @param maxColors size of the palette (minimum 2, maximum 256)
+     *
+     * @return {@link ColorMap} or <code>null</code> if there is no pixel or maxColors is out of range
+     * @throws IllegalArgumentException if a color value is not between 0 and 255
+     */
+    public ColorMap quantize(int[][] pixels, int maxColors) {
+        ColorHistogram histogram = new ColorHistogram();
+        for (int[] pixel : pixels) {
+            histogram.add(pixel[0], pixel[1], pixel[2]);
+        }
+        return quantize(histogram, maxColors);
+    }
+
+    /**
+     * Modified median cut quantization: repeatedly cuts the most populated box at the median of its longest axis
+     *
+     * @return {@link Quantizer}
+     */
+    public static Quantizer medianCut() {
+        return MEDIAN_CUT;
+    }
+
+    /**
+     * Wu's variance minimization: repeatedly cuts the box with the highest color variance where the squared error
+     * of both halves is the lowest. Usually faster than {@link #medianCut()} for big palettes and closer to the
+     * colors of the image, but it picks different colors, so palettes differ from the original Color Thief
+     *
+     * @return {@link Quantizer}
+     */
+    public static Quantizer wu() {
+        return WU;
+    }
+
+    /**
+     * Refines the palette of another quantizer with k-means (Lloyd) iterations over the populated histogram cells,
+     * which moves the colors to the centers of their clusters, e.g. on gradients. The iterations stop early once
+     * the colors don't move anymore. Big histograms are assigned in parallel on the common {@link ForkJoinPool}
+     *
+     * @param seed {@link Quantizer} of the initial palette, e.g. {@link #medianCut()}
+     * @param maxIterations maximum number of iterations, a handful is usually enough
+     *
+     * @return {@link Quantizer}
+     * @throws IllegalArgumentException if maxIterations is < 1
+     */
+    public static Quantizer kMeans(Quantizer seed, int maxIterations) {
+        return kMeans(seed, maxIterations, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Refines the palette of another quantizer with k-means (Lloyd) iterations like {@link #kMeans(Quantizer, int)}
+     *
+     * @param seed {@link Quantizer} of the initial palette, e.g. {@link #medianCut()}
+     * @param maxIterations maximum number of iterations, a handful is usually enough
+     * @param executor {@link Executor} that runs the parallel assignment of big histograms
+     *
+     * @return {@link Quantizer}
+     * @throws IllegalArgumentException if maxIterations is < 1
+     */
+    public static Quantizer kMeans(Quantizer seed, int maxIterations, Executor executor) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Specified maxIterations should be greater then 0.");
+        }
+        return new KMeansQuantizer(seed, maxIterations, executor);
+    }
+}
@@ -0,0 +1,45 @@
+package com.crazyxacker.colorthief;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Color maps of several regions of an image, together with the color map of all regions combined
+ *
+ * @param <K> type of the region keys
+ */
+public class RegionColorMaps<K> {
+    private final Map<K, ColorMap> colorMaps;
+    private final ColorMap combined;
+
+    RegionColorMaps(Map<K, ColorMap> colorMaps, ColorMap combined) {
+        this.colorMaps = Collections.unmodifiableMap(colorMaps);
+        this.combined = combined;
+    }
+
+    /**
+     * @param key key of the region
+     *
+     * @return {@link ColorMap} of the region or <code>null</code> if the region has no pixels to use
+     */
+    public ColorMap get(K key) {
+        return colorMaps.get(key);
+    }
+
+    /**
+     * @return {@link ColorMap} of every region, in the order of the requested regions
+     */
+    public Map<K, ColorMap> regions() {
+        return colorMaps;
+    }
+
+    /**
+     * Color map of the pixels of all regions together, built by summing up the regions' histograms. If the
+     * regions split the image without overlapping (e.g. a grid) it is the color map of the whole image
+     *
+     * @return combined {@link ColorMap} or <code>null</code> if no region has pixels to use
+     */
+    public ColorMap combined() {
+        return combined;
+    }
+}
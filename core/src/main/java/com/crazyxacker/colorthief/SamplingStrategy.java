@@ -0,0 +1,240 @@
+package com.crazyxacker.colorthief;
+
+/**
+ * Decides which pixels of an image are sampled for the histogram
+ */
+public abstract class SamplingStrategy {
+
+    /**
+     * Plans the sampling of an area
+     *
+     * @param width width of the sampled area
+     * @param height height of the sampled area
+     *
+     * @return {@link Plan} for the area
+     */
+    public abstract Plan plan(int width, int height);
+
+    /**
+     * Sampled pixels of an area of a fixed size. Plans are immutable, so one plan can be used by several threads
+     * that sample different rows
+     */
+    public interface Plan {
+
+        /**
+         * @return number (or an estimation of it) of pixels that are sampled from the whole area
+         */
+        long sampleCount();
+
+        /**
+         * Collects the columns of the sampled pixels within a row
+         *
+         * @param y row within the area
+         * @param columns buffer of at least the area's width receiving the columns in ascending order
+         *
+         * @return number of sampled pixels within the row
+         */
+        int columns(int y, int[] columns);
+    }
+
+    /**
+     * Samples every quality-th pixel of the image in row-major order, as the <code>quality</code> parameter does
+     *
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     *
+     * @return {@link SamplingStrategy}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static SamplingStrategy stride(int quality) {
+        if (quality < 1) {
+            throw new IllegalArgumentException("Specified quality should be greater then 0.");
+        }
+        return new Stride(quality);
+    }
+
+    /**
+     * Splits the image into square cells and samples the center pixel of every cell. Unlike {@link #stride(int)}
+     * it skips rows as well as columns, so the samples are spread evenly in both directions. Every sampled row
+     * samples the same columns, {@link #jittered(int, long)} varies them
+     *
+     * @param step cell size in pixels
+     *
+     * @return {@link SamplingStrategy}
+     * @throws IllegalArgumentException if step is < 1
+     */
+    public static SamplingStrategy grid(int step) {
+        if (step < 1) {
+            throw new IllegalArgumentException("Specified step should be greater then 0.");
+        }
+        return new Grid(step, 0);
+    }
+
+    /**
+     * Samples at most maxSamples pixels regardless of the image resolution, evenly spread over a grid. The cost
+     * of the sampling stays the same for small and huge images
+     *
+     * @param maxSamples maximum number of sampled pixels
+     *
+     * @return {@link SamplingStrategy}
+     * @throws IllegalArgumentException if maxSamples is < 1
+     */
+    public static SamplingStrategy budget(int maxSamples) {
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("Specified maxSamples should be greater then 0.");
+        }
+        return new Grid(0, maxSamples);
+    }
+
+    /**
+     * Samples at most maxSamples pixels regardless of the image resolution like {@link #budget(int)}, but takes a
+     * random pixel of every grid cell instead of its center. The same seed always samples the same pixels
+     *
+     * @param maxSamples maximum number of sampled pixels
+     * @param seed seed of the pixel selection
+     *
+     * @return {@link SamplingStrategy}
+     * @throws IllegalArgumentException if maxSamples is < 1
+     */
+    public static SamplingStrategy jittered(int maxSamples, long seed) {
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("Specified maxSamples should be greater then 0.");
+        }
+        return new Jittered(maxSamples, seed);
+    }
+
+    /**
+     * Finds the smallest cell size for which a grid over the area doesn't exceed maxSamples cells
+     */
+    static int budgetStep(int width, int height, int maxSamples) {
+        long pixelCount = (long) width * height;
+        int step = Math.max(1, (int) Math.ceil(Math.sqrt((double) pixelCount / maxSamples)));
+        while (cells(width, step) * cells(height, step) > maxSamples) {
+            step++;
+        }
+        return step;
+    }
+
+    private static long cells(int size, int step) {
+        return (size + step - 1) / step;
+    }
+
+    private static class Stride extends SamplingStrategy {
+        private final int quality;
+
+        Stride(int quality) {
+            this.quality = quality;
+        }
+
+        @Override
+        public Plan plan(int width, int height) {
+            return new Plan() {
+                @Override
+                public long sampleCount() {
+                    return ((long) width * height + quality - 1) / quality;
+                }
+
+                @Override
+                public int columns(int y, int[] columns) {
+                    // Every quality-th pixel of the whole image is sampled, so find the first one within this row
+                    int count = 0;
+                    for (long x = (quality - (long) y * width % quality) % quality; x < width; x += quality) {
+                        columns[count++] = (int) x;
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+
+    private static class Grid extends SamplingStrategy {
+        private final int step;
+        private final int maxSamples;
+
+        Grid(int step, int maxSamples) {
+            this.step = step;
+            this.maxSamples = maxSamples;
+        }
+
+        @Override
+        public Plan plan(int width, int height) {
+            int step = maxSamples > 0 ? budgetStep(width, height, maxSamples) : this.step;
+
+            return new Plan() {
+                @Override
+                public long sampleCount() {
+                    return cells(width, step) * cells(height, step);
+                }
+
+                @Override
+                public int columns(int y, int[] columns) {
+                    if (y != center(y / step, height)) {
+                        return 0;
+                    }
+
+                    int count = 0;
+                    for (int cell = 0; (long) cell * step < width; cell++) {
+                        columns[count++] = center(cell, width);
+                    }
+                    return count;
+                }
+
+                private int center(int cell, int size) {
+                    int start = cell * step;
+                    return start + Math.min(step, size - start) / 2;
+                }
+            };
+        }
+    }
+
+    private static class Jittered extends SamplingStrategy {
+        private final int maxSamples;
+        private final long seed;
+
+        Jittered(int maxSamples, long seed) {
+            this.maxSamples = maxSamples;
+            this.seed = seed;
+        }
+
+        @Override
+        public Plan plan(int width, int height) {
+            int step = budgetStep(width, height, maxSamples);
+
+            return new Plan() {
+                @Override
+                public long sampleCount() {
+                    return cells(width, step) * cells(height, step);
+                }
+
+                @Override
+                public int columns(int y, int[] columns) {
+                    int cellY = y / step;
+                    int startY = cellY * step;
+                    int cellHeight = Math.min(step, height - startY);
+
+                    // The random offsets are derived from the cell position, so rows can be planned in any order
+                    int count = 0;
+                    for (int cellX = 0; (long) cellX * step < width; cellX++) {
+                        long random = mix(seed + cellY * 0x9E3779B97F4A7C15L + cellX);
+                        if (startY + (int) ((random >>> 32) % cellHeight) == y) {
+                            int startX = cellX * step;
+                            columns[count++] = startX + (int) ((random & 0xFFFFFFFFL) % Math.min(step, width - startX));
+                        }
+                    }
+                    return count;
+                }
+            };
+        }
+
+        /**
+         * SplitMix64 finalizer
+         */
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
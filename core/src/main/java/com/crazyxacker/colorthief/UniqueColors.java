@@ -0,0 +1,129 @@
+package com.crazyxacker.colorthief;
+
+import java.util.Arrays;
+
+/**
+ * Distinct colors of a histogram with their number of pixels, kept as long as there are at most
+ * {@link #MAX_COLORS} of them. Flat graphics like logos, icons and UI screenshots stay below that, so their palette
+ * can be returned exactly instead of being quantized. Photos exceed it after a few pixels and drop the map.
+ * <p>
+ * Primitive open-addressing hash map from RGB24 to count with linear probing, so adding a pixel allocates nothing.
+ */
+final class UniqueColors {
+    /**
+     * Most distinct colors that are tracked, the largest palette size
+     */
+    static final int MAX_COLORS = 256;
+
+    private static final int CAPACITY_BITS = 9;
+    private static final int CAPACITY = 1 << CAPACITY_BITS;
+
+    /**
+     * RGB24 color + 1 of every slot, 0 if the slot is empty
+     */
+    private final int[] keys = new int[CAPACITY];
+    private final int[] counts = new int[CAPACITY];
+    private int size;
+
+    /**
+     * Adds pixels of a color
+     *
+     * @param rgb the RGB24 color
+     * @param count number of pixels
+     *
+     * @return <code>false</code> if the color would exceed {@link #MAX_COLORS} distinct colors
+     */
+    boolean add(int rgb, int count) {
+        int key = rgb + 1;
+        int slot = (key * 0x9E3779B9) >>> (32 - CAPACITY_BITS);
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                counts[slot] += count;
+                return true;
+            }
+            if (k == 0) {
+                if (size == MAX_COLORS) {
+                    return false;
+                }
+                keys[slot] = key;
+                counts[slot] = count;
+                size++;
+                return true;
+            }
+            slot = (slot + 1) & (CAPACITY - 1);
+        }
+    }
+
+    /**
+     * Adds all colors of another map
+     *
+     * @return <code>false</code> if the colors would exceed {@link #MAX_COLORS} distinct colors
+     */
+    boolean addAll(UniqueColors other) {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            if (other.keys[slot] != 0 && !add(other.keys[slot] - 1, other.counts[slot])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return colors and their counts as pairs of <code>rgb, count</code>, in ascending order of the colors
+     */
+    int[] toArray() {
+        long[] sorted = new long[size];
+        int index = 0;
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            if (keys[slot] != 0) {
+                sorted[index++] = ((long) (keys[slot] - 1) << 32) | (counts[slot] & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(sorted);
+
+        int[] pairs = new int[2 * size];
+        for (int i = 0; i < size; i++) {
+            pairs[2 * i] = (int) (sorted[i] >>> 32);
+            pairs[2 * i + 1] = (int) sorted[i];
+        }
+        return pairs;
+    }
+
+    /**
+     * Palette of the exact colors, the most frequent one first
+     *
+     * @param histogram histogram of the same pixels, the boxes of the colors are its cells
+     */
+    ColorMap colorMap(ColorHistogram histogram) {
+        // count in the upper bits, so colors of the same count come in ascending order
+        long[] order = new long[size];
+        int index = 0;
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            if (keys[slot] != 0) {
+                order[index++] = ((long) -counts[slot] << 24) | (keys[slot] - 1);
+            }
+        }
+        Arrays.sort(order);
+
+        int rshift = 8 - histogram.sigbits;
+        ColorMap cmap = new ColorMap.Nearest();
+        for (long key : order) {
+            int rgb = (int) (key & 0xFFFFFF);
+            int count = (int) -(key >> 24);
+            int r = rgb >> 16, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+            int rval = r >> rshift, gval = g >> rshift, bval = b >> rshift;
+            cmap.push(new MMCQ.ColorSpaceBox(rval, rval, gval, gval, bval, bval, histogram.histo, count, new int[] {r, g, b}));
+        }
+        return cmap;
+    }
+}
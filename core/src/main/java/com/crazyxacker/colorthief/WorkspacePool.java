@@ -0,0 +1,49 @@
+package com.crazyxacker.colorthief;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Small pool of the scratch workspaces of the quantizers. Workspaces are borrowed for a run and returned after it,
+ * so their tables are reused by whatever thread runs next, e.g. by short-lived virtual threads, while the pool
+ * keeps no more idle workspaces than there are processors.
+ */
+final class WorkspacePool<T> {
+    private final Supplier<T> factory;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    WorkspacePool(Supplier<T> factory) {
+        this(factory, Runtime.getRuntime().availableProcessors());
+    }
+
+    WorkspacePool(Supplier<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return an idle workspace or a new one if there is none
+     */
+    T borrow() {
+        T workspace = idle.poll();
+        if (workspace == null) {
+            return factory.get();
+        }
+        idleCount.decrementAndGet();
+        return workspace;
+    }
+
+    /**
+     * Returns a workspace after a run, it is dropped if the pool already holds enough idle ones
+     */
+    void release(T workspace) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(workspace);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.crazyxacker.colorthief;
+
+import java.util.Arrays;
+
+/**
+ * Xiaolin Wu's color quantizer ("Efficient Statistical Computations for Optimal Color Quantization", Graphics
+ * Gems II). The box with the highest variance is cut on the plane that minimizes the summed squared error of both
+ * halves. All box statistics come from the {@link Moments} of the histogram, so trying a cut plane costs a few
+ * table lookups. The tables are pooled up to the default precision, like the ones of {@link MMCQ}.
+ */
+final class WuQuantizer extends Quantizer {
+    private static final WorkspacePool<Workspace> WORKSPACES = new WorkspacePool<>(Workspace::new);
+
+    private static final int MAX_BOXES = 256;
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+
+    /**
+     * Boxes of a running quantization, bounds are inclusive like the ones of {@link MMCQ.ColorSpaceBox}
+     */
+    private static final class Workspace {
+        final int[] r1 = new int[MAX_BOXES];
+        final int[] r2 = new int[MAX_BOXES];
+        final int[] g1 = new int[MAX_BOXES];
+        final int[] g2 = new int[MAX_BOXES];
+        final int[] b1 = new int[MAX_BOXES];
+        final int[] b2 = new int[MAX_BOXES];
+        final double[] variance = new double[MAX_BOXES];
+        final Moments moments = new Moments();
+
+        // best cut found by maximize()
+        int cutAxis;
+        int cutPlane;
+        double cutScore;
+    }
+
+    @Override
+    protected ColorMap cluster(ColorHistogram histogram, int maxColors) {
+        // short-circuit
+        if (histogram.count() == 0 || maxColors < 2 || maxColors > MAX_BOXES) {
+            return null;
+        }
+
+        Workspace ws = WORKSPACES.borrow();
+        try {
+            return cluster(ws, histogram, maxColors);
+        } finally {
+            ws.moments.release();
+            WORKSPACES.release(ws);
+        }
+    }
+
+    private static ColorMap cluster(Workspace ws, ColorHistogram histogram, int maxColors) {
+        // Wu has no palettes of the JavaScript version to match, so the first box covers every occupied cell
+        int[] bounds = histogram.occupiedBounds();
+        Moments moments = ws.moments;
+        moments.reset(histogram, true, bounds);
+
+        ws.r1[0] = bounds[0];
+        ws.r2[0] = bounds[1];
+        ws.g1[0] = bounds[2];
+        ws.g2[0] = bounds[3];
+        ws.b1[0] = bounds[4];
+        ws.b2[0] = bounds[5];
+        ws.variance[0] = variance(ws, 0);
+
+        int boxes = 1;
+        int next = 0;
+        while (boxes < maxColors) {
+            if (cut(ws, next, boxes)) {
+                ws.variance[next] = variance(ws, next);
+                ws.variance[boxes] = variance(ws, boxes);
+                boxes++;
+            } else {
+                // the box is a single color, don't try it again
+                ws.variance[next] = 0;
+            }
+
+            next = 0;
+            for (int i = 1; i < boxes; i++) {
+                if (ws.variance[i] > ws.variance[next]) {
+                    next = i;
+                }
+            }
+            if (ws.variance[next] <= 0) {
+                break;
+            }
+        }
+
+        // Most populated colors first, so the first one is the dominant color
+        long[] order = new long[boxes];
+        for (int i = 0; i < boxes; i++) {
+            long count = moments.population(ws.r1[i], ws.r2[i], ws.g1[i], ws.g2[i], ws.b1[i], ws.b2[i]);
+            order[i] = (-count << 8) | i;
+        }
+        Arrays.sort(order);
+
+        ColorMap cmap = new ColorMap();
+        for (long key : order) {
+            int i = (int) (key & 0xFF);
+            int count = (int) -(key >> 8);
+            cmap.push(new MMCQ.ColorSpaceBox(ws.r1[i], ws.r2[i], ws.g1[i], ws.g2[i], ws.b1[i], ws.b2[i], moments.histo, count,
+                    moments.avg(ws.r1[i], ws.r2[i], ws.g1[i], ws.g2[i], ws.b1[i], ws.b2[i], count)));
+        }
+        return cmap;
+    }
+
+    /**
+     * Cuts a box in two, the second half becomes the box with the index target
+     *
+     * @return <code>false</code> if the box can't be cut
+     */
+    private static boolean cut(Workspace ws, int box, int target) {
+        Moments m = ws.moments;
+        int r1 = ws.r1[box], r2 = ws.r2[box];
+        int g1 = ws.g1[box], g2 = ws.g2[box];
+        int b1 = ws.b1[box], b2 = ws.b2[box];
+
+        long weight = m.sum(m.count, r1, r2, g1, g2, b1, b2);
+        long red = m.sum(m.red, r1, r2, g1, g2, b1, b2);
+        long green = m.sum(m.green, r1, r2, g1, g2, b1, b2);
+        long blue = m.sum(m.blue, r1, r2, g1, g2, b1, b2);
+
+        ws.cutAxis = -1;
+        ws.cutScore = 0;
+        maximize(ws, box, RED, weight, red, green, blue);
+        maximize(ws, box, GREEN, weight, red, green, blue);
+        maximize(ws, box, BLUE, weight, red, green, blue);
+        if (ws.cutAxis == -1) {
+            return false;
+        }
+
+        ws.r1[target] = r1;
+        ws.r2[target] = r2;
+        ws.g1[target] = g1;
+        ws.g2[target] = g2;
+        ws.b1[target] = b1;
+        ws.b2[target] = b2;
+
+        int plane = ws.cutPlane;
+        if (ws.cutAxis == RED) {
+            ws.r2[box] = plane;
+            ws.r1[target] = plane + 1;
+        } else if (ws.cutAxis == GREEN) {
+            ws.g2[box] = plane;
+            ws.g1[target] = plane + 1;
+        } else {
+            ws.b2[box] = plane;
+            ws.b1[target] = plane + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the plane along an axis that splits the box into the halves with the lowest summed squared error. Both
+     * halves have to be populated. Remembers the plane if it beats the best cut found so far.
+     */
+    private static void maximize(Workspace ws, int box, int axis, long weight, long red, long green, long blue) {
+        Moments m = ws.moments;
+        int r1 = ws.r1[box], r2 = ws.r2[box];
+        int g1 = ws.g1[box], g2 = ws.g2[box];
+        int b1 = ws.b1[box], b2 = ws.b2[box];
+        int first = axis == RED ? r1 : axis == GREEN ? g1 : b1;
+        int last = axis == RED ? r2 : axis == GREEN ? g2 : b2;
+
+        for (int plane = first; plane < last; plane++) {
+            // lower half of the box up to and including the plane
+            int hr2 = axis == RED ? plane : r2;
+            int hg2 = axis == GREEN ? plane : g2;
+            int hb2 = axis == BLUE ? plane : b2;
+
+            long halfWeight = m.sum(m.count, r1, hr2, g1, hg2, b1, hb2);
+            if (halfWeight == 0) {
+                continue;
+            }
+            long otherWeight = weight - halfWeight;
+            if (otherWeight == 0) {
+                // the upper half only gets emptier
+                break;
+            }
+
+            long halfRed = m.sum(m.red, r1, hr2, g1, hg2, b1, hb2);
+            long halfGreen = m.sum(m.green, r1, hr2, g1, hg2, b1, hb2);
+            long halfBlue = m.sum(m.blue, r1, hr2, g1, hg2, b1, hb2);
+
+            // the squared error of a box is the sum of its squares minus this term, so maximize it for both halves
+            double score = squared(halfRed, halfGreen, halfBlue) / halfWeight
+                    + squared(red - halfRed, green - halfGreen, blue - halfBlue) / otherWeight;
+            if (score > ws.cutScore) {
+                ws.cutScore = score;
+                ws.cutAxis = axis;
+                ws.cutPlane = plane;
+            }
+        }
+    }
+
+    /**
+     * Summed squared error of the colors of a box to their mean, 0 if the box can't be cut any further
+     */
+    private static double variance(Workspace ws, int box) {
+        Moments m = ws.moments;
+        int r1 = ws.r1[box], r2 = ws.r2[box];
+        int g1 = ws.g1[box], g2 = ws.g2[box];
+        int b1 = ws.b1[box], b2 = ws.b2[box];
+        if (r1 == r2 && g1 == g2 && b1 == b2) {
+            return 0;
+        }
+
+        long weight = m.sum(m.count, r1, r2, g1, g2, b1, b2);
+        if (weight == 0) {
+            return 0;
+        }
+        double squares = m.sum(m.squares, r1, r2, g1, g2, b1, b2);
+        return squares - squared(m.sum(m.red, r1, r2, g1, g2, b1, b2), m.sum(m.green, r1, r2, g1, g2, b1, b2),
+                m.sum(m.blue, r1, r2, g1, g2, b1, b2)) / weight;
+    }
+
+    private static double squared(long red, long green, long blue) {
+        return (double) red * red + (double) green * green + (double) blue * blue;
+    }
+}
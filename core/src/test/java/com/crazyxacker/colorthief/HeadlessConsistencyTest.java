@@ -0,0 +1,770 @@
+package com.crazyxacker.colorthief;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Checks the core module without the JavaFX toolkit: the example images are decoded with {@link ImageIO} and
+ * every optimized or persisted path has to give the results of the plain one
+ */
+public class HeadlessConsistencyTest {
+    private static final int[] COLOR_COUNTS = {2, 5, 10, 64, 256};
+
+    private int failures;
+
+    public static void main(String[] args) throws IOException {
+        HeadlessConsistencyTest test = new HeadlessConsistencyTest();
+        test.run();
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    private void run() throws IOException {
+        PixelBuffer[] images = {
+                read("../examples/img/photo1.jpg"),
+                read("../examples/img/photo2.jpg"),
+                read("../examples/img/photo3.jpg")
+        };
+
+        for (PixelBuffer image : images) {
+            testKMeans(image);
+            testHistograms(image);
+            testLookup(image);
+            testRemap(image);
+            testDeduplicate(image);
+        }
+        testFlatGraphics();
+        testMalformedHistograms();
+        testWuBounds();
+        testForcedBoxStatistics(images);
+        testTracker(images);
+        testLab();
+        testStore();
+
+        System.out.println(failures == 0 ? "All checks passed." : failures + " checks failed!");
+    }
+
+    private static PixelBuffer read(String pathname) throws IOException {
+        System.out.println("Analyzing image " + pathname + "...");
+        BufferedImage image = ImageIO.read(new File(pathname));
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return PixelBuffer.ofArgb(image.getRGB(0, 0, width, height, null, 0, width), width, height);
+    }
+
+    /**
+     * k-means refinement gives the same palette on any executor, keeps every sampled pixel in a cluster and
+     * doesn't move the colors further away from the pixels than the seed palette
+     */
+    private void testKMeans(PixelBuffer image) {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int sigbits = MMCQ.MIN_SIGBITS; sigbits <= MMCQ.MAX_SIGBITS; sigbits++) {
+                ColorHistogram histogram = ColorHistogram.of(image, SamplingStrategy.stride(1), true, sigbits);
+                for (int colorCount : COLOR_COUNTS) {
+                    String name = "sigbits = " + sigbits + ", colorCount = " + colorCount;
+                    ColorMap serial = Quantizer.kMeans(Quantizer.medianCut(), 10, Runnable::run).quantize(histogram, colorCount);
+                    check("k-means on the common pool, " + name, serial.palette(),
+                            Quantizer.kMeans(Quantizer.medianCut(), 10, ForkJoinPool.commonPool()).quantize(histogram, colorCount).palette());
+                    check("k-means on 3 threads, " + name, serial.palette(),
+                            Quantizer.kMeans(Quantizer.medianCut(), 10, executor).quantize(histogram, colorCount).palette());
+
+                    int population = 0;
+                    for (MMCQ.ColorSpaceBox box : serial.boxes) {
+                        population += box.count(false);
+                    }
+                    check("k-means population, " + name, histogram.count(), population);
+
+                    double seedError = error(histogram, Quantizer.medianCut().quantize(histogram, colorCount).palette());
+                    double error = error(histogram, serial.palette());
+                    check("k-means error " + error + " <= median cut error " + seedError + ", " + name, true, error <= seedError);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Histograms survive their binary form, and merging the histograms of consecutive bands of rows gives the
+     * histogram of the whole image
+     */
+    private void testHistograms(PixelBuffer image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int sigbits = MMCQ.MIN_SIGBITS; sigbits <= MMCQ.MAX_SIGBITS; sigbits++) {
+            ColorHistogram histogram = ColorHistogram.of(image, SamplingStrategy.stride(1), true, sigbits);
+            byte[] bytes = histogram.toByteArray();
+            ColorHistogram read = ColorHistogram.fromByteArray(bytes);
+            check("histogram round trip, sigbits = " + sigbits, true, Arrays.equals(bytes, read.toByteArray()));
+
+            for (int bands : new int[] {2, 3, 7}) {
+                ColorHistogram merged = new ColorHistogram(sigbits);
+                for (int band = 0; band < bands; band++) {
+                    int y1 = height * band / bands;
+                    int y2 = height * (band + 1) / bands;
+                    ColorHistogram part = ColorHistogram.of(image.region(0, y1, width, y2 - y1), SamplingStrategy.stride(1), true, sigbits);
+                    // through the binary form, like a stored aggregate
+                    merged.merge(ColorHistogram.fromByteArray(part.toByteArray()));
+                }
+                check("merged histogram, sigbits = " + sigbits + ", bands = " + bands, true, Arrays.equals(bytes, merged.toByteArray()));
+
+                for (int colorCount : COLOR_COUNTS) {
+                    String name = "sigbits = " + sigbits + ", bands = " + bands + ", colorCount = " + colorCount;
+                    check("merged median cut, " + name, Quantizer.medianCut().quantize(histogram, colorCount).palette(),
+                            Quantizer.medianCut().quantize(merged, colorCount).palette());
+                    check("merged Wu, " + name, Quantizer.wu().quantize(histogram, colorCount).palette(),
+                            Quantizer.wu().quantize(merged, colorCount).palette());
+                }
+            }
+        }
+    }
+
+    /**
+     * The inverse color map maps a packed color like {@link ColorMap#map(int[])} maps the center of its cell, for
+     * every lookup precision and distance, and colors within a box exactly like {@link ColorMap#map(int[])}
+     */
+    private void testLookup(PixelBuffer image) {
+        // a grid over the whole color space and some of the pixels of the image
+        List<Integer> colors = new ArrayList<>();
+        for (int r = 0; r < 256; r += 11) {
+            for (int g = 3; g < 256; g += 11) {
+                for (int b = 7; b < 256; b += 11) {
+                    colors.add((r << 16) | (g << 8) | b);
+                }
+            }
+        }
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y += 5) {
+            image.readRow(y, row);
+            for (int x = y % 31; x < row.length; x += 31) {
+                colors.add(row[x] & 0xFFFFFF);
+            }
+        }
+
+        for (int colorCount : COLOR_COUNTS) {
+            ColorMap colorMap = Quantizer.medianCut().quantize(image, colorCount, SamplingStrategy.stride(10), true, MMCQ.DEFAULT_SIGBITS);
+            checkLookup("default lookup, colorCount = " + colorCount, colorMap, colors, MMCQ.DEFAULT_SIGBITS, true);
+
+            for (int bits = MMCQ.MIN_SIGBITS; bits <= MMCQ.MAX_SIGBITS; bits++) {
+                colorMap.setLookupBits(bits);
+                checkLookup("lookup bits = " + bits + ", colorCount = " + colorCount, colorMap, colors, bits, bits == MMCQ.DEFAULT_SIGBITS);
+            }
+            for (ColorDistance distance : ColorDistance.values()) {
+                colorMap.setDistance(distance);
+                checkLookup("lookup distance = " + distance + ", colorCount = " + colorCount, colorMap, colors,
+                        MMCQ.MAX_SIGBITS, false);
+            }
+        }
+    }
+
+    private void checkLookup(String name, ColorMap colorMap, List<Integer> colors, int bits, boolean exactInBoxes) {
+        int shift = 8 - bits;
+        int[] palette = new int[colorMap.size()];
+        for (int i = 0; i < palette.length; i++) {
+            int[] color = colorMap.palette()[i];
+            palette[i] = (color[0] << 16) | (color[1] << 8) | color[2];
+        }
+
+        int mismatches = 0;
+        for (int rgb : colors) {
+            int[] color = {rgb >> 16, rgb >> 8 & 0xFF, rgb & 0xFF};
+            int[] center = new int[3];
+            for (int c = 0; c < 3; c++) {
+                center[c] = (color[c] >> shift << shift) + (1 << shift >> 1);
+            }
+            int[] expected = colorMap.map(center);
+            if (exactInBoxes && colorMap.containingIndex(color) >= 0) {
+                expected = colorMap.map(color);
+            }
+
+            int alpha = rgb * 31 << 24;
+            int mapped = colorMap.map(alpha | rgb);
+            if (mapped != (alpha | (expected[0] << 16) | (expected[1] << 8) | expected[2])
+                    || palette[colorMap.indexOf(rgb)] != (mapped & 0xFFFFFF)) {
+                mismatches++;
+            }
+        }
+        check(name + ", mismatches of " + colors.size() + " colors", 0, mismatches);
+    }
+
+    /**
+     * Plain remapping maps every pixel through {@link ColorMap#map(int)}. Dithered remapping gives the same pixels
+     * on any executor and in place, diffuses the error across the whole image without seams between bands of rows,
+     * and keeps the averages of blocks of pixels closer to the image
+     */
+    private void testRemap(PixelBuffer image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = new int[width * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.readRow(y, row);
+            System.arraycopy(row, 0, argb, y * width, width);
+        }
+
+        // two colors are too few to get closer to every block average
+        for (int colorCount : new int[] {5, 16, 64}) {
+            String name = "colorCount = " + colorCount;
+            ColorMap colorMap = Quantizer.medianCut().quantize(image, colorCount, SamplingStrategy.stride(10), false, MMCQ.DEFAULT_SIGBITS);
+
+            int[] plain = colorMap.remap(image, false);
+            int mismatches = 0;
+            for (int i = 0; i < argb.length; i++) {
+                if (plain[i] != colorMap.map(argb[i])) {
+                    mismatches++;
+                }
+            }
+            check("plain remap mismatches, " + name, 0, mismatches);
+
+            int[] dithered = colorMap.remap(image, true);
+            int[] serial = new int[argb.length];
+            colorMap.remap(image, serial, true, Runnable::run);
+            check("dithered remap on the calling thread, " + name, true, Arrays.equals(dithered, serial));
+            int[] inPlace = argb.clone();
+            colorMap.remap(PixelBuffer.ofArgb(inPlace, width, height), inPlace, true, ForkJoinPool.commonPool());
+            check("dithered remap in place, " + name, true, Arrays.equals(dithered, inPlace));
+
+            // the error diffusion only runs down the image, so the top rows don't depend on the rows below them. More
+            // than 64 rows, so the diffusion starting over after a band of rows would show up
+            int rows = Math.min(height, 100);
+            int[] top = colorMap.remap(image.region(0, 0, width, rows), true);
+            check("dithered remap of the top " + rows + " rows, " + name, true,
+                    Arrays.equals(top, Arrays.copyOf(dithered, width * rows)));
+
+            check("dithered block error below plain block error, " + name, true,
+                    blockError(argb, dithered, width, height) < blockError(argb, plain, width, height));
+        }
+    }
+
+    /**
+     * Mean distance of the average colors of 4x4 blocks of two images
+     */
+    private static double blockError(int[] expected, int[] actual, int width, int height) {
+        double error = 0;
+        int blocks = 0;
+        for (int y = 0; y + 4 <= height; y += 4) {
+            for (int x = 0; x + 4 <= width; x += 4) {
+                double[] sums = new double[3];
+                for (int i = y; i < y + 4; i++) {
+                    for (int j = x; j < x + 4; j++) {
+                        for (int c = 0; c < 3; c++) {
+                            int shift = 16 - 8 * c;
+                            sums[c] += (expected[i * width + j] >> shift & 0xFF) - (actual[i * width + j] >> shift & 0xFF);
+                        }
+                    }
+                }
+                error += Math.sqrt(sums[0] * sums[0] + sums[1] * sums[1] + sums[2] * sums[2]) / 16;
+                blocks++;
+            }
+        }
+        return error / blocks;
+    }
+
+    /**
+     * CIELAB values and distances match published reference values, and the cell tables hold the values of the
+     * cell centers, shared by all threads
+     */
+    private void testLab() {
+        float[] lab = new float[3];
+        Lab.convert(255, 255, 255, lab, 0);
+        checkClose("CIELAB of white", new double[] {100, 0, 0}, lab, 0.01);
+        Lab.convert(255, 0, 0, lab, 0);
+        checkClose("CIELAB of red", new double[] {53.2408, 80.0925, 67.2032}, lab, 0.01);
+        Lab.convert(0, 0, 0, lab, 0);
+        checkClose("CIELAB of black", new double[] {0, 0, 0}, lab, 0.01);
+
+        // pair 1 of the CIEDE2000 test data of Sharma, Wu and Dalal
+        float[] pair = {50, 2.6772f, -79.7751f, 50, 0, -82.7485f};
+        double chroma1 = Lab.chroma(pair, 0);
+        double chroma2 = Lab.chroma(pair, 3);
+        checkClose("CIE76 of the reference pair", new double[] {4.0011},
+                new float[] {(float) Math.sqrt(Lab.distance(ColorDistance.CIE76, pair, 0, chroma1, pair, 3, chroma2))}, 0.001);
+        checkClose("CIE94 of the reference pair", new double[] {1.3950},
+                new float[] {(float) Math.sqrt(Lab.distance(ColorDistance.CIE94, pair, 0, chroma1, pair, 3, chroma2))}, 0.001);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int sigbits = MMCQ.MIN_SIGBITS; sigbits <= MMCQ.MAX_SIGBITS; sigbits++) {
+                int bits = sigbits;
+                List<Callable<float[]>> calls = Collections.nCopies(8, () -> Lab.cells(bits));
+                float[] cells = Lab.cells(sigbits);
+                for (Future<float[]> future : executor.invokeAll(calls)) {
+                    check("shared cells, sigbits = " + sigbits, true, future.get() == cells);
+                }
+
+                int shift = 8 - sigbits;
+                int half = 1 << shift >> 1;
+                int mismatches = 0;
+                for (int index = 0; index < 1 << (3 * sigbits); index++) {
+                    int r = index >> (2 * sigbits);
+                    int g = (index >> sigbits) & ((1 << sigbits) - 1);
+                    int b = index & ((1 << sigbits) - 1);
+                    Lab.convert((r << shift) + half, (g << shift) + half, (b << shift) + half, lab, 0);
+                    if (lab[0] != cells[3 * index] || lab[1] != cells[3 * index + 1] || lab[2] != cells[3 * index + 2]) {
+                        mismatches++;
+                    }
+                }
+                check("cell center mismatches, sigbits = " + sigbits, 0, mismatches);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Deduplicated palettes keep the population and their order, and no two of their colors are closer than the
+     * minimum distance
+     */
+    private void testDeduplicate(PixelBuffer image) {
+        for (ColorDistance distance : ColorDistance.values()) {
+            ColorMap colorMap = Quantizer.medianCut().quantize(image, 64, SamplingStrategy.stride(10), true, MMCQ.DEFAULT_SIGBITS);
+            colorMap.setDistance(distance);
+            int population = population(colorMap);
+            check("deduplicated by 0, distance = " + distance, colorMap.palette(), colorMap.deduplicate(0).palette());
+
+            for (double minDistance : new double[] {2, 10, 30, 1000}) {
+                String name = "distance = " + distance + ", minDistance = " + minDistance;
+                ColorMap deduplicated = colorMap.deduplicate(minDistance);
+                check("deduplicated population, " + name, population, population(deduplicated));
+                check("deduplicated distance, " + name, distance, deduplicated.getDistance());
+
+                int[][] palette = deduplicated.palette();
+                List<String> original = new ArrayList<>();
+                for (int[] color : colorMap.palette()) {
+                    original.add(Arrays.toString(color));
+                }
+                int[] indices = new int[palette.length];
+                for (int i = 0; i < palette.length; i++) {
+                    indices[i] = original.indexOf(Arrays.toString(palette[i]));
+                    check("deduplicated order, " + name, true, i == 0 || indices[i] > indices[i - 1]);
+                    for (int j = 0; j < i; j++) {
+                        // CIE94 isn't symmetric, it is measured from the color visited first, the more populated one
+                        boolean jFirst = colorMap.boxes.get(indices[j]).count(false) >= colorMap.boxes.get(indices[i]).count(false);
+                        check("deduplicated colors apart, " + name, true, jFirst
+                                ? distance(distance, palette[j], palette[i]) >= minDistance
+                                : distance(distance, palette[i], palette[j]) >= minDistance);
+                    }
+                }
+            }
+            check("deduplicated by 1000, distance = " + distance, 1, colorMap.deduplicate(1000).size());
+        }
+    }
+
+    private static int population(ColorMap colorMap) {
+        int population = 0;
+        for (MMCQ.ColorSpaceBox box : colorMap.boxes) {
+            population += box.count(false);
+        }
+        return population;
+    }
+
+    /**
+     * Distance of two colors as {@link ColorMap#deduplicate(double)} measures it
+     */
+    private static double distance(ColorDistance distance, int[] reference, int[] other) {
+        if (distance == ColorDistance.RGB) {
+            int dr = reference[0] - other[0];
+            int dg = reference[1] - other[1];
+            int db = reference[2] - other[2];
+            return Math.sqrt(dr * dr + dg * dg + db * db);
+        }
+        float[] lab = new float[6];
+        Lab.convert(reference[0], reference[1], reference[2], lab, 0);
+        Lab.convert(other[0], other[1], other[2], lab, 3);
+        return Math.sqrt(Lab.distance(distance, lab, 0, Lab.chroma(lab, 0), lab, 3, Lab.chroma(lab, 3)));
+    }
+
+    private void checkClose(String name, double[] expected, float[] actual, double tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            if (Math.abs(expected[i] - actual[i]) > tolerance) {
+                failures++;
+                System.out.println("Values differ for " + name + ":\n  expected " + Arrays.toString(expected)
+                        + "\n  actual   " + Arrays.toString(actual));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stored palettes survive reopening the store, also beyond its initial capacity, changed files aren't found
+     * anymore, and a store file can only be opened once at a time
+     */
+    private void testStore() throws IOException {
+        Path directory = Files.createTempDirectory("colorthief");
+        Path file = directory.resolve("palettes.bin");
+        String[] names = {"photo1.jpg", "photo2.jpg", "photo3.jpg"};
+        Path[] paths = new Path[names.length];
+        ColorMap[] colorMaps = new ColorMap[names.length];
+        try {
+            try (PaletteStore store = PaletteStore.open(file)) {
+                for (int i = 0; i < names.length; i++) {
+                    paths[i] = Files.copy(Paths.get("../examples/img", names[i]), directory.resolve(names[i]));
+                    colorMaps[i] = Quantizer.medianCut().quantize(read(paths[i].toString()), 8 << i, SamplingStrategy.stride(10), true, MMCQ.DEFAULT_SIGBITS);
+                    store.put(paths[i], colorMaps[i]);
+                }
+                for (long hash = 0; hash < 1500; hash++) {
+                    store.put(hash, hash % 2 == 0 ? colorMaps[0] : null);
+                }
+                try {
+                    PaletteStore.open(file).close();
+                    check("store opened twice", true, false);
+                } catch (IOException e) {
+                    // locked
+                }
+            }
+
+            try (PaletteStore store = PaletteStore.open(file, 4)) {
+                check("reopened store size", names.length + 1500, store.size());
+                check("reopened store max colors", PaletteStore.DEFAULT_MAX_COLORS, store.getMaxColors());
+                for (int i = 0; i < names.length; i++) {
+                    PaletteStore.Palette palette = store.get(paths[i]);
+                    check("reopened palette of " + names[i], storedPalette(colorMaps[i], store.getMaxColors()), palette.palette());
+                    check("reopened populations of " + names[i], Arrays.toString(storedPopulations(colorMaps[i], store.getMaxColors())),
+                            Arrays.toString(palette.getPopulations()));
+                }
+                int mismatches = 0;
+                for (long hash = 0; hash < 1500; hash++) {
+                    PaletteStore.Palette palette = store.get(hash);
+                    if (palette == null || palette.size() != (hash % 2 == 0 ? colorMaps[0].size() : 0)) {
+                        mismatches++;
+                    }
+                }
+                check("reopened palettes of content hashes", 0, mismatches);
+                check("palette of an unknown content hash", true, store.get(1500L) == null);
+
+                Files.setLastModifiedTime(paths[0], FileTime.fromMillis(Files.getLastModifiedTime(paths[0]).toMillis() + 1000));
+                check("palette of a changed file", true, store.get(paths[0]) == null);
+                check("palette of a file that isn't stored", true, store.get(file) == null);
+            }
+
+            Path invalid = directory.resolve("invalid.bin");
+            Files.write(invalid, new byte[64]);
+            try {
+                PaletteStore.open(invalid).close();
+                check("invalid store opened", true, false);
+            } catch (IOException e) {
+                // rejected
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) files::iterator) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Palette of the most populated colors of a color map in its own order, as a store keeps it
+     */
+    private static int[][] storedPalette(ColorMap colorMap, int maxColors) {
+        int[][] palette = colorMap.palette();
+        return Arrays.stream(storedIndices(colorMap, maxColors)).mapToObj(i -> palette[i]).toArray(int[][]::new);
+    }
+
+    private static int[] storedPopulations(ColorMap colorMap, int maxColors) {
+        return Arrays.stream(storedIndices(colorMap, maxColors)).map(i -> colorMap.boxes.get(i).count(false)).toArray();
+    }
+
+    private static int[] storedIndices(ColorMap colorMap, int maxColors) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < colorMap.size(); i++) {
+            indices.add(i);
+        }
+        indices.sort((a, b) -> Integer.compare(colorMap.boxes.get(b).count(false), colorMap.boxes.get(a).count(false)));
+        return indices.subList(0, Math.min(maxColors, indices.size())).stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Wu's quantizer keeps the cells of a first pixel that is the maximum on every axis, which the tracked bounds of
+     * the histogram miss
+     */
+    private void testWuBounds() {
+        Random random = new Random(7);
+        for (int sigbits = MMCQ.MIN_SIGBITS; sigbits <= MMCQ.MAX_SIGBITS; sigbits++) {
+            ColorHistogram histogram = new ColorHistogram(sigbits);
+            histogram.add(250, 245, 255);
+            for (int i = 0; i < 5000; i++) {
+                histogram.add(random.nextInt(200), random.nextInt(200), random.nextInt(200));
+            }
+
+            for (int colorCount : new int[] {2, 8, 64}) {
+                ColorMap colorMap = Quantizer.wu().quantize(histogram, colorCount);
+                int population = 0;
+                for (MMCQ.ColorSpaceBox box : colorMap.boxes) {
+                    population += box.count(false);
+                }
+                String name = "sigbits = " + sigbits + ", colorCount = " + colorCount;
+                check("Wu population with the maximum first, " + name, histogram.count(), population);
+                check("Wu box of the first pixel, " + name, true,
+                        colorMap.boxes.stream().anyMatch(box -> box.contains(new int[] {250, 245, 255})));
+            }
+        }
+    }
+
+    /**
+     * Recounted populations and averages of boxes match the ones from the moment tables, also for histograms whose
+     * sums weighted by color exceed the int range
+     */
+    private void testForcedBoxStatistics(PixelBuffer[] images) {
+        List<ColorHistogram> histograms = new ArrayList<>();
+        for (PixelBuffer image : images) {
+            histograms.add(ColorHistogram.of(image, SamplingStrategy.stride(1), true, MMCQ.DEFAULT_SIGBITS));
+        }
+        int[] bins = new int[1 << (3 * MMCQ.DEFAULT_SIGBITS)];
+        bins[MMCQ.getColorIndex(30, 31, 29, MMCQ.DEFAULT_SIGBITS)] = 1_000_000_000;
+        bins[MMCQ.getColorIndex(28, 31, 31, MMCQ.DEFAULT_SIGBITS)] = 1_000_000_000;
+        bins[MMCQ.getColorIndex(2, 3, 4, MMCQ.DEFAULT_SIGBITS)] = 100_000_000;
+        histograms.add(ColorHistogram.ofBins(MMCQ.DEFAULT_SIGBITS, bins));
+
+        for (ColorHistogram histogram : histograms) {
+            for (int colorCount : COLOR_COUNTS) {
+                ColorMap colorMap = Quantizer.medianCut().quantize(histogram, colorCount);
+                for (MMCQ.ColorSpaceBox box : colorMap.boxes) {
+                    int count = box.count(false);
+                    int[] avg = box.avg(false).clone();
+                    check("recounted box population, " + box, count, box.count(true));
+                    check("recomputed box average, " + box, Arrays.toString(avg), Arrays.toString(box.avg(true)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Corrupted binary forms and out of range colors are either rejected or read into a consistent histogram, and
+     * pixel counts don't overflow
+     */
+    private void testMalformedHistograms() {
+        ColorHistogram histogram = new ColorHistogram();
+        histogram.add(10, 200, 30);
+        histogram.add(250, 0, 1);
+        histogram.add(10, 200, 30);
+        byte[] bytes = histogram.toByteArray();
+
+        for (int i = 0; i < bytes.length; i++) {
+            for (int value : new int[] {0, 0x7F, 0x80, 0xFF, bytes[i] + 1}) {
+                byte[] corrupted = bytes.clone();
+                corrupted[i] = (byte) value;
+                try {
+                    ColorHistogram read = ColorHistogram.fromByteArray(corrupted);
+                    int count = 0;
+                    for (int bin : read.histo) {
+                        count += bin;
+                    }
+                    check("bins of a corrupted histogram, byte " + i + " = " + value, read.count(), count);
+                } catch (IllegalArgumentException e) {
+                    // rejected
+                }
+            }
+        }
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                ColorHistogram.fromByteArray(Arrays.copyOf(bytes, length));
+                check("truncated histogram of " + length + " bytes rejected", true, false);
+            } catch (IllegalArgumentException e) {
+                // rejected
+            }
+        }
+
+        for (int[] color : new int[][] {{-1, 0, 0}, {0, 256, 0}, {0, 0, Integer.MIN_VALUE}}) {
+            try {
+                histogram.add(color[0], color[1], color[2]);
+                check("added color " + Arrays.toString(color) + " rejected", true, false);
+            } catch (IllegalArgumentException e) {
+                check("histogram unchanged by a rejected color", 3, histogram.count());
+            }
+        }
+        int vboxLength = 1 << MMCQ.DEFAULT_SIGBITS;
+        for (int[] cell : new int[][] {{-1, 0, 0}, {0, vboxLength, 0}, {0, 0, vboxLength}}) {
+            try {
+                histogram.get(cell[0], cell[1], cell[2]);
+                check("read cell " + Arrays.toString(cell) + " rejected", true, false);
+            } catch (IllegalArgumentException e) {
+                // rejected
+            }
+        }
+        check("cell of an added color", 2, histogram.get(10 >> 3, 200 >> 3, 30 >> 3));
+
+        int[] bins = new int[1 << (3 * MMCQ.DEFAULT_SIGBITS)];
+        bins[0] = Integer.MAX_VALUE;
+        ColorHistogram full = ColorHistogram.ofBins(MMCQ.DEFAULT_SIGBITS, bins);
+        try {
+            full.merge(histogram);
+            check("merge beyond Integer.MAX_VALUE pixels rejected", true, false);
+        } catch (ArithmeticException e) {
+            check("full histogram unchanged by a rejected merge", Integer.MAX_VALUE, full.count());
+        }
+        try {
+            full.add(1, 2, 3);
+            check("add beyond Integer.MAX_VALUE pixels rejected", true, false);
+        } catch (ArithmeticException e) {
+            check("full histogram unchanged by a rejected add", Integer.MAX_VALUE, full.count());
+        }
+    }
+
+    /**
+     * A tracker without history follows every frame exactly, a steady stream keeps its palette, and after every
+     * frame the drift is within the threshold
+     */
+    private void testTracker(PixelBuffer[] images) {
+        SamplingStrategy sampling = SamplingStrategy.budget(20000);
+        ColorHistogram[] frames = new ColorHistogram[images.length];
+        for (int i = 0; i < images.length; i++) {
+            frames[i] = ColorHistogram.of(images[i], sampling, true, MMCQ.DEFAULT_SIGBITS);
+        }
+
+        for (int colorCount : COLOR_COUNTS) {
+            PaletteTracker latest = new PaletteTracker(colorCount, 0, 0, Quantizer.medianCut());
+            for (int i = 0; i < 2 * frames.length; i++) {
+                ColorHistogram frame = frames[i % frames.length];
+                int[][] expected = Quantizer.medianCut().quantize(ColorHistogram.ofBins(frame.sigbits, frame.histo.clone()), colorCount).palette();
+                check("tracker without history, frame " + i + ", colorCount = " + colorCount, expected,
+                        latest.update(images[i % images.length], sampling, true).palette());
+            }
+
+            PaletteTracker steady = new PaletteTracker(colorCount);
+            ColorMap first = steady.update(frames[0]);
+            for (int i = 0; i < 20; i++) {
+                check("steady tracker keeps its palette, frame " + i + ", colorCount = " + colorCount, true, steady.update(frames[0]) == first);
+            }
+
+            PaletteTracker tracker = new PaletteTracker(colorCount);
+            int changes = 0;
+            ColorMap previous = null;
+            for (int i = 0; i < 60; i++) {
+                // a cut from the first to the second image after 30 frames
+                ColorMap colorMap = tracker.update(frames[i < 30 ? 0 : 1]);
+                check("drift within the threshold, frame " + i + ", colorCount = " + colorCount, true,
+                        tracker.getDrift() <= PaletteTracker.DEFAULT_DRIFT_THRESHOLD);
+                if (colorMap != previous) {
+                    changes++;
+                    previous = colorMap;
+                }
+            }
+            check("tracker follows a cut, colorCount = " + colorCount, true, changes > 1 && changes < 30);
+
+            tracker.reset();
+            check("reset tracker has no palette, colorCount = " + colorCount, true, tracker.getColorMap() == null);
+            check("reset tracker starts over, colorCount = " + colorCount, first.palette(), tracker.update(frames[0]).palette());
+        }
+    }
+
+    /**
+     * Images with no more distinct colors than the palette size get exactly these colors, most populated first,
+     * from every quantizer, and every color maps to itself
+     */
+    private void testFlatGraphics() {
+        Random random = new Random(16);
+        for (int colors : new int[] {1, 2, 7, 16, 256}) {
+            List<Integer> distinct = new ArrayList<>();
+            while (distinct.size() < colors) {
+                // no white, which is ignored
+                int rgb = random.nextInt(0xF0F0F0);
+                if (!distinct.contains(rgb)) {
+                    distinct.add(rgb);
+                }
+            }
+
+            // color i covers i + 1 pixels, plus some white ones
+            List<Integer> pixels = new ArrayList<>();
+            int[][] expected = new int[colors][];
+            int[] expectedPopulations = new int[colors];
+            for (int i = 0; i < colors; i++) {
+                int rgb = distinct.get(i);
+                for (int j = 0; j <= i; j++) {
+                    pixels.add(0xFF000000 | rgb);
+                }
+                expected[colors - 1 - i] = new int[] {rgb >> 16, rgb >> 8 & 0xFF, rgb & 0xFF};
+                expectedPopulations[colors - 1 - i] = i + 1;
+            }
+            for (int i = 0; i < 10; i++) {
+                pixels.add(0xFFFFFFFF);
+            }
+            Collections.shuffle(pixels, random);
+            int[] argb = pixels.stream().mapToInt(Integer::intValue).toArray();
+            PixelBuffer image = PixelBuffer.ofArgb(argb, argb.length, 1);
+
+            for (Quantizer quantizer : new Quantizer[] {Quantizer.medianCut(), Quantizer.wu(), Quantizer.kMeans(Quantizer.medianCut(), 5)}) {
+                for (int colorCount : new int[] {Math.max(2, colors), 256}) {
+                    String name = colors + " colors, colorCount = " + colorCount;
+                    ColorMap colorMap = quantizer.quantize(image, colorCount, SamplingStrategy.stride(1), true, MMCQ.DEFAULT_SIGBITS);
+                    check("flat palette, " + name, expected, colorMap.palette());
+
+                    int[] populations = new int[colorMap.size()];
+                    for (int i = 0; i < populations.length; i++) {
+                        populations[i] = colorMap.boxes.get(i).count(false);
+                    }
+                    check("flat populations, " + name, Arrays.toString(expectedPopulations), Arrays.toString(populations));
+
+                    for (int[] color : expected) {
+                        check("flat color " + Arrays.toString(color) + " mapped, " + name, Arrays.toString(color),
+                                Arrays.toString(colorMap.map(color)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Mean squared distance of the populated histogram cells to their nearest palette color
+     */
+    private static double error(ColorHistogram histogram, int[][] palette) {
+        int mult = 1 << (8 - histogram.sigbits);
+        int mask = (1 << histogram.sigbits) - 1;
+        double sum = 0;
+        for (int index = 0; index < histogram.histo.length; index++) {
+            if (histogram.histo[index] == 0) {
+                continue;
+            }
+            double r = ((index >> (2 * histogram.sigbits)) + 0.5) * mult;
+            double g = (((index >> histogram.sigbits) & mask) + 0.5) * mult;
+            double b = ((index & mask) + 0.5) * mult;
+
+            double nearest = Double.MAX_VALUE;
+            for (int[] color : palette) {
+                double dr = r - color[0];
+                double dg = g - color[1];
+                double db = b - color[2];
+                nearest = Math.min(nearest, dr * dr + dg * dg + db * db);
+            }
+            sum += nearest * histogram.histo[index];
+        }
+        return sum / histogram.count();
+    }
+
+    private void check(String name, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failures++;
+            System.out.println("Values differ for " + name + ":\n  expected " + expected + "\n  actual   " + actual);
+        }
+    }
+
+    private void check(String name, int[][] expected, int[][] actual) {
+        if (!Arrays.deepEquals(expected, actual)) {
+            failures++;
+            System.out.println("Palettes differ for " + name + ":\n  expected " + Arrays.deepToString(expected)
+                    + "\n  actual   " + Arrays.deepToString(actual));
+        }
+    }
+}
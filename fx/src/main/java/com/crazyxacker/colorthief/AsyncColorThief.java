@@ -0,0 +1,270 @@
+package com.crazyxacker.colorthief;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs {@link ColorThief} extractions in the background, so the JavaFX application thread is never blocked.
+ * <p>
+ * At most <code>maxInFlight</code> extractions run at the same time, further ones wait in submission order. This
+ * bounds the memory of the decoded images of a batch, whatever the executor. By default the extractions run on
+ * virtual threads if the runtime has them (Java 21 and later) and on daemon platform threads otherwise.
+ * <p>
+ * The futures complete on the thread of the extraction; results for the UI have to be handed over with
+ * <code>future.thenAcceptAsync(consumer, Platform::runLater)</code>. Cancelling a future removes its extraction
+ * if it hasn't started yet, while a running one is finished and its result dropped.
+ */
+public class AsyncColorThief {
+    private static final int DEFAULT_QUALITY = 10;
+    private static final boolean DEFAULT_IGNORE_WHITE = true;
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final Queue<Task<?>> pending = new ArrayDeque<>();
+    private int inFlight;
+    private boolean draining;
+
+    /**
+     * Runs as many extractions at the same time as there are processors on the default executor
+     */
+    public AsyncColorThief() {
+        this(DefaultExecutor.INSTANCE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor {@link Executor} that runs the extractions
+     * @param maxInFlight maximum number of extractions running at the same time
+     *
+     * @throws IllegalArgumentException if maxInFlight is < 1
+     */
+    public AsyncColorThief(Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Specified maxInFlight should be greater then 0.");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getDominantColor(Image, int, boolean)}
+     */
+    public CompletableFuture<Color> getDominantColorAsync(Image sourceImage, int quality, boolean ignoreWhite) {
+        return submit(() -> ColorThief.getDominantColor(sourceImage, quality, ignoreWhite));
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getPalette(Image, int)}
+     */
+    public CompletableFuture<List<Color>> getPaletteAsync(Image sourceImage, int colorCount) {
+        return getPaletteAsync(sourceImage, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getPalette(Image, int, int, boolean)}
+     */
+    public CompletableFuture<List<Color>> getPaletteAsync(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        return submit(() -> ColorThief.getPalette(sourceImage, colorCount, quality, ignoreWhite));
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getColorMap(Image, int, int, boolean)}
+     */
+    public CompletableFuture<ColorMap> getColorMapAsync(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        return submit(() -> ColorThief.getColorMap(sourceImage, colorCount, quality, ignoreWhite));
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getDominantColor(Path, int, int, boolean)}, the image is decoded in the
+     * background as well
+     */
+    public CompletableFuture<Color> getDominantColorAsync(Path path, int sampleSize, int quality, boolean ignoreWhite) {
+        return submit(() -> ColorThief.getDominantColor(path, sampleSize, quality, ignoreWhite));
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getPalette(Path, int, int, int, boolean)}, the image is decoded in the
+     * background as well
+     */
+    public CompletableFuture<List<Color>> getPaletteAsync(Path path, int sampleSize, int colorCount, int quality, boolean ignoreWhite) {
+        return submit(() -> ColorThief.getPalette(path, sampleSize, colorCount, quality, ignoreWhite));
+    }
+
+    /**
+     * Asynchronous {@link ColorThief#getColorMap(Path, int, int, int, boolean)}, the image is decoded in the
+     * background as well
+     */
+    public CompletableFuture<ColorMap> getColorMapAsync(Path path, int sampleSize, int colorCount, int quality, boolean ignoreWhite) {
+        return submit(() -> ColorThief.getColorMap(path, sampleSize, colorCount, quality, ignoreWhite));
+    }
+
+    /**
+     * Extracts the palettes of many images
+     *
+     * @return futures of the palettes in the order of the images
+     */
+    public List<CompletableFuture<List<Color>>> getPalettes(List<Image> sourceImages, int colorCount, int quality, boolean ignoreWhite) {
+        List<CompletableFuture<List<Color>>> futures = new ArrayList<>(sourceImages.size());
+        for (Image sourceImage : sourceImages) {
+            futures.add(getPaletteAsync(sourceImage, colorCount, quality, ignoreWhite));
+        }
+        return futures;
+    }
+
+    /**
+     * Decodes many image files and extracts their color maps. Only <code>maxInFlight</code> decoded images exist
+     * at the same time
+     *
+     * @return futures of the color maps in the order of the paths
+     */
+    public List<CompletableFuture<ColorMap>> getColorMaps(List<Path> paths, int sampleSize, int colorCount, int quality, boolean ignoreWhite) {
+        List<CompletableFuture<ColorMap>> futures = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            futures.add(getColorMapAsync(path, sampleSize, colorCount, quality, ignoreWhite));
+        }
+        return futures;
+    }
+
+    /**
+     * Decodes many image files and extracts their color maps, handing every color map over as soon as it is
+     * extracted
+     *
+     * @param onResult called with every path and its {@link ColorMap} in the order of completion, from the
+     *                 threads of the extractions one at a time
+     *
+     * @return future that completes once all images are done, exceptionally if any of them failed. Cancelling it
+     *         cancels the extractions that haven't started yet
+     */
+    public CompletableFuture<Void> getColorMaps(List<Path> paths, int sampleSize, int colorCount, int quality, boolean ignoreWhite,
+                                                BiConsumer<Path, ColorMap> onResult) {
+        List<CompletableFuture<ColorMap>> futures = getColorMaps(paths, sampleSize, colorCount, quality, ignoreWhite);
+        CompletableFuture<?>[] handled = new CompletableFuture<?>[futures.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            Path path = paths.get(i);
+            handled[i] = futures.get(i).thenAccept(colorMap -> {
+                synchronized (onResult) {
+                    onResult.accept(path, colorMap);
+                }
+            });
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(handled);
+        all.whenComplete((result, error) -> {
+            if (all.isCancelled()) {
+                futures.forEach(future -> future.cancel(false));
+            }
+        });
+        return all;
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> callable) {
+        Task<T> task = new Task<>(callable);
+        synchronized (this) {
+            pending.add(task);
+        }
+        drain();
+        return task.future;
+    }
+
+    /**
+     * Starts pending extractions that haven't been cancelled while fewer than maxInFlight run. Only one thread
+     * drains at a time and it does so in a loop, so neither rejected extractions nor an executor running them on
+     * the calling thread nest the calls
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+
+        while (true) {
+            Task<?> task;
+            synchronized (this) {
+                task = inFlight < maxInFlight ? pending.poll() : null;
+                while (task != null && task.future.isDone()) {
+                    task = pending.poll();
+                }
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+                inFlight++;
+            }
+
+            Task<?> started = task;
+            try {
+                executor.execute(() -> {
+                    try {
+                        started.run();
+                    } finally {
+                        finished();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                started.future.completeExceptionally(e);
+                synchronized (this) {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    private void finished() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private static final class Task<T> {
+        private final Callable<T> callable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        private void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Virtual threads where the runtime has them, looked up reflectively to run on Java 17 as well
+     */
+    private static final class DefaultExecutor {
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "ColorThief");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,1161 @@
+/*
+ * Java Color Thief
+ * by Sven Woltmann, Fonpit AG
+ *
+ * https://www.androidpit.com
+ * https://www.androidpit.de
+ *
+ * License
+ * -------
+ * Creative Commons Attribution 2.5 License:
+ * http://creativecommons.org/licenses/by/2.5/
+ *
+ * Thanks
+ * ------
+ * Lokesh Dhakar - for the original Color Thief JavaScript version
+ * available at http://lokeshdhakar.com/projects/color-thief/
+ */
+
+package com.crazyxacker.colorthief;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Calculates the dominant color or a representative color palette of an {@link Image}.
+ * <p>
+ * The cost of an extraction depends on the number of sampled pixels. The <code>quality</code> parameter samples
+ * every n-th pixel, so its cost still grows with the image size: at the default of 10 a 6000x4000 photo is
+ * sampled 2.4 million times, while a 600x400 one is sampled 24 000 times with nearly the same palette. If the
+ * image comes from a file, URL or stream, the <code>sampleSize</code> entry points let the decoder scale it down
+ * first, which saves the decoding time and the memory of the full-resolution bitmap as well. Very small sample
+ * sizes blend small color areas into their surroundings, while a few hundred pixels are usually enough.
+ * {@link SamplingStrategy#budget(int)} caps the number of samples of already decoded images in the same way.
+ */
+public class ColorThief {
+    private static final int DEFAULT_QUALITY = 10;
+    private static final boolean DEFAULT_IGNORE_WHITE = true;
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+    private static final int SPARSE_ROW_STEP = 16;
+    private static final WritablePixelFormat<IntBuffer> ARGB_FORMAT = PixelFormat.getIntArgbInstance();
+
+    /**
+     * Use the median cut algorithm to cluster similar colors and return the base color from the largest cluster
+     *
+     * @param sourceImage source {@link Image}
+     *
+     * @return dominant color as {@link Color}
+     */
+    public static Color getDominantColor(Image sourceImage) {
+        return getDominantColor(sourceImage, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors and return the base color from the largest cluster
+     *
+     * @param sourceImage source {@link Image}
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster a color will be returned but
+     *            the greater the likelihood that it will not be the visually most dominant color.
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static Color getDominantColor(Image sourceImage, int quality, boolean ignoreWhite) {
+        return getDominantColor(sourceImage, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors and return the base color from the largest cluster
+     *
+     * @param sourceImage source {@link Image}
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     */
+    public static Color getDominantColor(Image sourceImage, SamplingStrategy sampling, boolean ignoreWhite) {
+        return getDominantColor(sourceImage, bounds(sourceImage), sampling, ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image and return the base
+     * color from the largest cluster
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     *
+     * @return dominant color as {@link Color}
+     * @throws IllegalArgumentException if region is not within the image bounds
+     */
+    public static Color getDominantColor(Image sourceImage, Rectangle2D region) {
+        return getDominantColor(sourceImage, region, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image and return the base
+     * color from the largest cluster
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster a color will be returned but
+     *            the greater the likelihood that it will not be the visually most dominant color.
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     * @throws IllegalArgumentException if quality is < 1 or region is not within the image bounds
+     */
+    public static Color getDominantColor(Image sourceImage, Rectangle2D region, int quality, boolean ignoreWhite) {
+        return getDominantColor(sourceImage, region, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image and return the base
+     * color from the largest cluster
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     * @throws IllegalArgumentException if region is not within the image bounds
+     */
+    public static Color getDominantColor(Image sourceImage, Rectangle2D region, SamplingStrategy sampling, boolean ignoreWhite) {
+        return Optional.ofNullable(getPalette(sourceImage, region, 5, sampling, ignoreWhite))
+                .filter(paletteList -> !paletteList.isEmpty())
+                .map(palette -> palette.get(0))
+                .orElse(null);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned
+     *
+     * @return palette {@link List} of {@link Color}
+     */
+    public static List<Color> getPalette(Image sourceImage, int colorCount) {
+        return getPalette(sourceImage, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static List<Color> getPalette(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        return getPalette(sourceImage, colorCount, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     */
+    public static List<Color> getPalette(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite) {
+        return getPalette(sourceImage, bounds(sourceImage), colorCount, sampling, ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IllegalArgumentException if region is not within the image bounds
+     */
+    public static List<Color> getPalette(Image sourceImage, Rectangle2D region, int colorCount) {
+        return getPalette(sourceImage, region, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IllegalArgumentException if quality is < 1 or region is not within the image bounds
+     */
+    public static List<Color> getPalette(Image sourceImage, Rectangle2D region, int colorCount, int quality, boolean ignoreWhite) {
+        return getPalette(sourceImage, region, colorCount, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IllegalArgumentException if region is not within the image bounds
+     */
+    public static List<Color> getPalette(Image sourceImage, Rectangle2D region, int colorCount, SamplingStrategy sampling, boolean ignoreWhite) {
+        return toColors(getColorMap(sourceImage, region, colorCount, sampling, ignoreWhite));
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     *
+     * @return {@link ColorMap}
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount) {
+        return getColorMap(sourceImage, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        return getColorMap(sourceImage, colorCount, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite) {
+        return getColorMap(sourceImage, bounds(sourceImage), colorCount, sampling, ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image. Only the pixels of
+     * the region are read, so the image doesn't have to be cropped into a copy first
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if region is not within the image bounds
+     */
+    public static ColorMap getColorMap(Image sourceImage, Rectangle2D region, int colorCount) {
+        return getColorMap(sourceImage, region, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image. Only the pixels of
+     * the region are read, so the image doesn't have to be cropped into a copy first
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if quality is < 1 or region is not within the image bounds
+     */
+    public static ColorMap getColorMap(Image sourceImage, Rectangle2D region, int colorCount, int quality, boolean ignoreWhite) {
+        return getColorMap(sourceImage, region, colorCount, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image. Only the pixels of
+     * the region are read, so the image doesn't have to be cropped into a copy first
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if region is not within the image bounds
+     */
+    public static ColorMap getColorMap(Image sourceImage, Rectangle2D region, int colorCount, SamplingStrategy sampling, boolean ignoreWhite) {
+        return getColorMap(sourceImage, region, colorCount, sampling, ignoreWhite, MMCQ.DEFAULT_SIGBITS);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors with the given histogram precision
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits
+     *            significant bits per color component, from {@link MMCQ#MIN_SIGBITS} to {@link MMCQ#MAX_SIGBITS}.
+     *            5 is the default. 4 is faster and good enough for thumbnails, 6 keeps close shades apart.
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public static List<Color> getPalette(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        return toColors(getColorMap(sourceImage, colorCount, sampling, ignoreWhite, sigbits));
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors with the given histogram precision
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits
+     *            significant bits per color component, from {@link MMCQ#MIN_SIGBITS} to {@link MMCQ#MAX_SIGBITS}.
+     *            5 is the default. 4 is faster and good enough for thumbnails, 6 keeps close shades apart.
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        return getColorMap(sourceImage, bounds(sourceImage), colorCount, sampling, ignoreWhite, sigbits);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within a region of the image with the given
+     * histogram precision
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits
+     *            significant bits per color component, from {@link MMCQ#MIN_SIGBITS} to {@link MMCQ#MAX_SIGBITS}
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if region is not within the image bounds or sigbits is out of range
+     */
+    public static ColorMap getColorMap(Image sourceImage, Rectangle2D region, int colorCount, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        return getColorMap(sourceImage, region, colorCount, sampling, ignoreWhite, sigbits, Quantizer.medianCut());
+    }
+
+    /**
+     * Cluster similar colors with the given quantization engine
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param quantizer {@link Quantizer} that clusters the colors, e.g. {@link Quantizer#wu()}
+     *
+     * @return palette {@link List} of {@link Color}
+     */
+    public static List<Color> getPalette(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite, Quantizer quantizer) {
+        return toColors(getColorMap(sourceImage, colorCount, sampling, ignoreWhite, quantizer));
+    }
+
+    /**
+     * Cluster similar colors with the given quantization engine
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param quantizer {@link Quantizer} that clusters the colors, e.g. {@link Quantizer#wu()}
+     *
+     * @return {@link ColorMap}
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite, Quantizer quantizer) {
+        return getColorMap(sourceImage, bounds(sourceImage), colorCount, sampling, ignoreWhite, MMCQ.DEFAULT_SIGBITS, quantizer);
+    }
+
+    /**
+     * Cluster similar colors within a region of the image with the given histogram precision and quantization
+     * engine
+     *
+     * @param sourceImage source {@link Image}
+     * @param region region of the image to use, in pixels
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits
+     *            significant bits per color component, from {@link MMCQ#MIN_SIGBITS} to {@link MMCQ#MAX_SIGBITS}
+     * @param quantizer {@link Quantizer} that clusters the colors
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if region is not within the image bounds or sigbits is out of range
+     */
+    public static ColorMap getColorMap(Image sourceImage, Rectangle2D region, int colorCount, SamplingStrategy sampling, boolean ignoreWhite,
+                                       int sigbits, Quantizer quantizer) {
+        checkColorCount(colorCount);
+        checkRegion(sourceImage, region);
+
+        int x = (int) region.getMinX();
+        int y = (int) region.getMinY();
+        int width = (int) region.getWidth();
+        int height = (int) region.getHeight();
+        SamplingStrategy.Plan plan = sampling.plan(width, height);
+
+        // Send histogram to quantize function which clusters values using median cut algorithm
+        return quantizer.quantize(fillHistogram(new ColorHistogram(sigbits), sourceImage, x, y, width, plan, 0, height, ignoreWhite), colorCount);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors. The histogram of big images is built in parallel
+     * row bands on the given executor (e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()}) and the result
+     * is identical to {@link #getColorMap(Image, int, int, boolean)}. Images with too few sampled pixels to
+     * benefit from it are processed on the calling thread
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param executor {@link Executor} that runs the row bands
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount, int quality, boolean ignoreWhite, Executor executor) {
+        return getColorMap(sourceImage, colorCount, SamplingStrategy.stride(quality), ignoreWhite, executor);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors. The histogram of big images is built in parallel
+     * row bands on the given executor (e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()}) and the result
+     * is identical to {@link #getColorMap(Image, int, SamplingStrategy, boolean)}. Images with too few sampled
+     * pixels to benefit from it are processed on the calling thread
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param executor {@link Executor} that runs the row bands
+     *
+     * @return {@link ColorMap}
+     */
+    public static ColorMap getColorMap(Image sourceImage, int colorCount, SamplingStrategy sampling, boolean ignoreWhite, Executor executor) {
+        checkColorCount(colorCount);
+
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+        int bands = Math.min(height, Runtime.getRuntime().availableProcessors());
+        SamplingStrategy.Plan plan = sampling.plan(width, height);
+
+        if (bands < 2 || plan.sampleCount() < PARALLEL_THRESHOLD) {
+            return Quantizer.medianCut().quantize(fillHistogram(new ColorHistogram(), sourceImage, 0, 0, width, plan, 0, height, ignoreWhite), colorCount);
+        }
+
+        List<CompletableFuture<ColorHistogram>> futures = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int y1 = (int) ((long) height * band / bands);
+            int y2 = (int) ((long) height * (band + 1) / bands);
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> fillHistogram(new ColorHistogram(), sourceImage, 0, 0, width, plan, y1, y2, ignoreWhite),
+                    executor
+            ));
+        }
+
+        // Merge in band order, so the bounds come out exactly as in a single pass
+        ColorHistogram histogram = futures.get(0).join();
+        for (int band = 1; band < bands; band++) {
+            histogram.merge(futures.get(band).join());
+        }
+
+        return Quantizer.medianCut().quantize(histogram, colorCount);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors and returns the
+     * base color from the largest cluster
+     *
+     * @param path path of the image file
+     * @param sampleSize maximum width and height of the decoded image
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster a color will be returned but
+     *            the greater the likelihood that it will not be the visually most dominant color.
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static Color getDominantColor(Path path, int sampleSize, int quality, boolean ignoreWhite) throws IOException {
+        return getDominantColor(decode(path, sampleSize), quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors
+     *
+     * @param path path of the image file
+     * @param sampleSize maximum width and height of the decoded image
+     * @param colorCount size of the palette; number of colors returned
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static List<Color> getPalette(Path path, int sampleSize, int colorCount, int quality, boolean ignoreWhite) throws IOException {
+        return getPalette(decode(path, sampleSize), colorCount, quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors
+     *
+     * @param path path of the image file
+     * @param sampleSize maximum width and height of the decoded image
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static ColorMap getColorMap(Path path, int sampleSize, int colorCount, int quality, boolean ignoreWhite) throws IOException {
+        return getColorMap(decode(path, sampleSize), colorCount, quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors and returns the
+     * base color from the largest cluster
+     *
+     * @param url URL of the image
+     * @param sampleSize maximum width and height of the decoded image
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster a color will be returned but
+     *            the greater the likelihood that it will not be the visually most dominant color.
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static Color getDominantColor(URL url, int sampleSize, int quality, boolean ignoreWhite) throws IOException {
+        return getDominantColor(decode(url, sampleSize), quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors
+     *
+     * @param url URL of the image
+     * @param sampleSize maximum width and height of the decoded image
+     * @param colorCount size of the palette; number of colors returned
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static List<Color> getPalette(URL url, int sampleSize, int colorCount, int quality, boolean ignoreWhite) throws IOException {
+        return getPalette(decode(url, sampleSize), colorCount, quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors
+     *
+     * @param url URL of the image
+     * @param sampleSize maximum width and height of the decoded image
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static ColorMap getColorMap(URL url, int sampleSize, int colorCount, int quality, boolean ignoreWhite) throws IOException {
+        return getColorMap(decode(url, sampleSize), colorCount, quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors and returns the
+     * base color from the largest cluster
+     *
+     * @param inputStream stream of the encoded image; it is not closed
+     * @param sampleSize maximum width and height of the decoded image
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster a color will be returned but
+     *            the greater the likelihood that it will not be the visually most dominant color.
+     * @param ignoreWhite
+     *            if <code>true</code>, white pixels are ignored
+     *
+     * @return dominant color as {@link Color}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static Color getDominantColor(InputStream inputStream, int sampleSize, int quality, boolean ignoreWhite) throws IOException {
+        return getDominantColor(decode(inputStream, sampleSize), quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors
+     *
+     * @param inputStream stream of the encoded image; it is not closed
+     * @param sampleSize maximum width and height of the decoded image
+     * @param colorCount size of the palette; number of colors returned
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static List<Color> getPalette(InputStream inputStream, int sampleSize, int colorCount, int quality, boolean ignoreWhite) throws IOException {
+        return getPalette(decode(inputStream, sampleSize), colorCount, quality, ignoreWhite);
+    }
+
+    /**
+     * Decodes the image already scaled down to fit into sampleSize x sampleSize pixels, so the full-resolution
+     * bitmap never exists in memory, then uses the median cut algorithm to cluster similar colors
+     *
+     * @param inputStream stream of the encoded image; it is not closed
+     * @param sampleSize maximum width and height of the decoded image
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IOException if the image can't be read or decoded
+     * @throws IllegalArgumentException if quality or sampleSize is < 1
+     */
+    public static ColorMap getColorMap(InputStream inputStream, int sampleSize, int colorCount, int quality, boolean ignoreWhite) throws IOException {
+        return getColorMap(decode(inputStream, sampleSize), colorCount, quality, ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors of already decoded pixels, which are read in place
+     * instead of being wrapped into an {@link Image}
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param colorCount size of the palette; number of colors returned
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return palette {@link List} of {@link Color}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static List<Color> getPalette(PixelBuffer pixels, int colorCount, int quality, boolean ignoreWhite) {
+        return toColors(getColorMap(pixels, colorCount, quality, ignoreWhite));
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors of already decoded pixels, which are read in place
+     * instead of being wrapped into an {@link Image}
+     *
+     * @param pixels {@link PixelBuffer} of the image
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorMap}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static ColorMap getColorMap(PixelBuffer pixels, int colorCount, int quality, boolean ignoreWhite) {
+        checkColorCount(colorCount);
+        return Quantizer.medianCut().quantize(pixels, colorCount, SamplingStrategy.stride(quality), ignoreWhite, MMCQ.DEFAULT_SIGBITS);
+    }
+
+    /**
+     * Builds the histogram of an image, e.g. to merge it with the histograms of other images into one palette
+     *
+     * @param sourceImage source {@link Image}
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return {@link ColorHistogram}
+     * @throws IllegalArgumentException if quality is < 1
+     */
+    public static ColorHistogram getHistogram(Image sourceImage, int quality, boolean ignoreWhite) {
+        return getHistogram(sourceImage, SamplingStrategy.stride(quality), ignoreWhite, MMCQ.DEFAULT_SIGBITS);
+    }
+
+    /**
+     * Builds the histogram of an image, e.g. to merge it with the histograms of other images into one palette
+     *
+     * @param sourceImage source {@link Image}
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param sigbits
+     *            significant bits per color component, from {@link MMCQ#MIN_SIGBITS} to {@link MMCQ#MAX_SIGBITS}.
+     *            Only histograms of the same precision can be merged.
+     *
+     * @return {@link ColorHistogram}
+     * @throws IllegalArgumentException if sigbits is out of range
+     */
+    public static ColorHistogram getHistogram(Image sourceImage, SamplingStrategy sampling, boolean ignoreWhite, int sigbits) {
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+        SamplingStrategy.Plan plan = sampling.plan(width, height);
+        return fillHistogram(new ColorHistogram(sigbits), sourceImage, 0, 0, width, plan, 0, height, ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors of a histogram, e.g. of several merged images
+     *
+     * @param histogram {@link ColorHistogram} of the pixels
+     * @param colorCount size of the palette; number of colors returned (minimum 2, maximum 256)
+     *
+     * @return palette {@link List} of {@link Color}
+     */
+    public static List<Color> getPalette(ColorHistogram histogram, int colorCount) {
+        checkColorCount(colorCount);
+        return toColors(Quantizer.medianCut().quantize(histogram, colorCount));
+    }
+
+    /**
+     * Posterizes an image: quantizes it to a palette of its own colors and maps every pixel to that palette
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorCount size of the palette (minimum 2, maximum 256)
+     * @param dither if <code>true</code>, the mapping errors are diffused to the neighbouring pixels
+     *
+     * @return posterized {@link WritableImage}, or an unchanged copy of an image without sampled pixels, which has no
+     *         palette. Transparent pixels are sampled like any other, their alpha is kept
+     * @throws IllegalArgumentException if colorCount is out of range
+     */
+    public static WritableImage posterize(Image sourceImage, int colorCount, boolean dither) {
+        checkColorCount(colorCount);
+        ColorMap colorMap = getColorMap(sourceImage, colorCount, DEFAULT_QUALITY, false);
+        return remapped(sourceImage, colorMap, dither, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Maps every pixel of an image to the palette of a {@link ColorMap}. The pixels are read and written in bulk
+     * and mapped through the inverse color map of the palette, see {@link ColorMap#remap(PixelBuffer, int[], boolean, Executor)}
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorMap {@link ColorMap} of the palette
+     * @param dither if <code>true</code>, the mapping errors are diffused to the neighbouring pixels
+     *
+     * @return mapped {@link WritableImage}
+     */
+    public static WritableImage remap(Image sourceImage, ColorMap colorMap, boolean dither) {
+        return remap(sourceImage, colorMap, dither, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Maps every pixel of an image to the palette of a {@link ColorMap}, bands of rows of big images are mapped
+     * in parallel unless they are dithered
+     *
+     * @param sourceImage source {@link Image}
+     * @param colorMap {@link ColorMap} of the palette
+     * @param dither if <code>true</code>, the mapping errors are diffused to the neighbouring pixels
+     * @param executor {@link Executor} that maps the bands of rows, unused if dithering
+     *
+     * @return mapped {@link WritableImage}
+     */
+    public static WritableImage remap(Image sourceImage, ColorMap colorMap, boolean dither, Executor executor) {
+        return remapped(sourceImage, Objects.requireNonNull(colorMap), dither, executor);
+    }
+
+    /**
+     * @param colorMap {@link ColorMap} of the palette, <code>null</code> copies the image unchanged
+     */
+    private static WritableImage remapped(Image sourceImage, ColorMap colorMap, boolean dither, Executor executor) {
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+
+        int[] pixels = new int[width * height];
+        sourceImage.getPixelReader().getPixels(0, 0, width, height, ARGB_FORMAT, pixels, 0, width);
+        if (colorMap != null) {
+            // every row is read before it is written, so the pixels are mapped in place
+            colorMap.remap(PixelBuffer.ofArgb(pixels, width, height), pixels, dither, executor);
+        }
+
+        WritableImage target = new WritableImage(width, height);
+        target.getPixelWriter().setPixels(0, 0, width, height, ARGB_FORMAT, pixels, 0, width);
+        return target;
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within several regions of the image at once. The
+     * pixels are traversed a single time, filling a histogram for every region, and the combined color map is
+     * built from the sum of these histograms instead of another scan
+     *
+     * @param sourceImage source {@link Image}
+     * @param regions regions of the image to use, in pixels, by their keys
+     * @param colorCount size of the palettes; number of colors returned (minimum 2, maximum 256)
+     * @param <K> type of the region keys
+     *
+     * @return {@link RegionColorMaps}
+     * @throws IllegalArgumentException if a region is not within the image bounds
+     */
+    public static <K> RegionColorMaps<K> getColorMaps(Image sourceImage, Map<K, Rectangle2D> regions, int colorCount) {
+        return getColorMaps(sourceImage, regions, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within several regions of the image at once. The
+     * pixels are traversed a single time, filling a histogram for every region, and the combined color map is
+     * built from the sum of these histograms instead of another scan
+     *
+     * @param sourceImage source {@link Image}
+     * @param regions regions of the image to use, in pixels, by their keys
+     * @param colorCount size of the palettes; number of colors returned (minimum 2, maximum 256)
+     * @param quality
+     *            1 is the highest quality settings. 10 is the default. There is a trade-off between
+     *            quality and speed. The bigger the number, the faster the palette generation but
+     *            the greater the likelihood that colors will be missed.
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param <K> type of the region keys
+     *
+     * @return {@link RegionColorMaps}
+     * @throws IllegalArgumentException if quality is < 1 or a region is not within the image bounds
+     */
+    public static <K> RegionColorMaps<K> getColorMaps(Image sourceImage, Map<K, Rectangle2D> regions, int colorCount, int quality, boolean ignoreWhite) {
+        return getColorMaps(sourceImage, regions, colorCount, SamplingStrategy.stride(quality), ignoreWhite);
+    }
+
+    /**
+     * Use the median cut algorithm to cluster similar colors within several regions of the image at once. The
+     * pixels are traversed a single time, filling a histogram for every region, and the combined color map is
+     * built from the sum of these histograms instead of another scan. Every region is sampled as if it was
+     * requested on its own, so its color map equals the one of {@link #getColorMap(Image, Rectangle2D, int, SamplingStrategy, boolean)}
+     *
+     * @param sourceImage source {@link Image}
+     * @param regions regions of the image to use, in pixels, by their keys
+     * @param colorCount size of the palettes; number of colors returned (minimum 2, maximum 256)
+     * @param sampling {@link SamplingStrategy} that selects the pixels to use within every region
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     * @param <K> type of the region keys
+     *
+     * @return {@link RegionColorMaps}
+     * @throws IllegalArgumentException if a region is not within the image bounds
+     */
+    public static <K> RegionColorMaps<K> getColorMaps(Image sourceImage, Map<K, Rectangle2D> regions, int colorCount, SamplingStrategy sampling, boolean ignoreWhite) {
+        checkColorCount(colorCount);
+
+        List<K> keys = new ArrayList<>(regions.keySet());
+        int regionCount = keys.size();
+        int[][] bounds = new int[regionCount][];
+        SamplingStrategy.Plan[] plans = new SamplingStrategy.Plan[regionCount];
+        ColorHistogram[] histograms = new ColorHistogram[regionCount];
+
+        int minY = Integer.MAX_VALUE, maxY = 0;
+        int maxWidth = 0;
+        for (int i = 0; i < regionCount; i++) {
+            Rectangle2D region = regions.get(keys.get(i));
+            checkRegion(sourceImage, region);
+
+            bounds[i] = new int[] {(int) region.getMinX(), (int) region.getMinY(), (int) region.getWidth(), (int) region.getHeight()};
+            plans[i] = sampling.plan(bounds[i][2], bounds[i][3]);
+            histograms[i] = new ColorHistogram();
+
+            minY = Math.min(minY, bounds[i][1]);
+            maxY = Math.max(maxY, bounds[i][1] + bounds[i][3]);
+            maxWidth = Math.max(maxWidth, bounds[i][2]);
+        }
+
+        PixelReader pixelReader = sourceImage.getPixelReader();
+        int width = (int) sourceImage.getWidth();
+        int[] row = new int[width];
+        int[][] columns = new int[regionCount][maxWidth];
+        int[] counts = new int[regionCount];
+
+        for (int y = minY; y < maxY; y++) {
+            // Collect the sampled columns of every region crossing this row, so the row is only read once
+            int first = width, last = -1, total = 0;
+            for (int i = 0; i < regionCount; i++) {
+                int[] region = bounds[i];
+                counts[i] = y >= region[1] && y < region[1] + region[3] ? plans[i].columns(y - region[1], columns[i]) : 0;
+                if (counts[i] > 0) {
+                    first = Math.min(first, region[0] + columns[i][0]);
+                    last = Math.max(last, region[0] + columns[i][counts[i] - 1]);
+                    total += counts[i];
+                }
+            }
+            if (total == 0) {
+                continue;
+            }
+
+            boolean sparse = total * SPARSE_ROW_STEP < last - first + 1;
+            if (!sparse) {
+                pixelReader.getPixels(first, y, last - first + 1, 1, ARGB_FORMAT, row, first, width);
+            }
+
+            for (int i = 0; i < regionCount; i++) {
+                int regionX = bounds[i][0];
+                for (int j = 0; j < counts[i]; j++) {
+                    int x = regionX + columns[i][j];
+                    histograms[i].addArgb(sparse ? pixelReader.getArgb(x, y) : row[x], ignoreWhite);
+                }
+            }
+        }
+
+        Map<K, ColorMap> colorMaps = new LinkedHashMap<>();
+        ColorHistogram combined = new ColorHistogram();
+        for (int i = 0; i < regionCount; i++) {
+            colorMaps.put(keys.get(i), Quantizer.medianCut().quantize(histograms[i], colorCount));
+            combined.merge(histograms[i]);
+        }
+
+        return new RegionColorMaps<>(colorMaps, Quantizer.medianCut().quantize(combined, colorCount));
+    }
+
+    /**
+     * Splits the image into a grid of regions that can be passed to {@link #getColorMaps(Image, Map, int)}. As
+     * the regions cover the whole image without overlapping, {@link RegionColorMaps#combined()} is the color map
+     * of the whole image
+     *
+     * @param sourceImage source {@link Image}
+     * @param columns number of grid columns
+     * @param rows number of grid rows
+     *
+     * @return grid cells by their index (<code>row * columns + column</code>), in row-major order
+     * @throws IllegalArgumentException if columns or rows is < 1 or greater than the image size
+     */
+    public static Map<Integer, Rectangle2D> gridRegions(Image sourceImage, int columns, int rows) {
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+        if (columns < 1 || rows < 1 || columns > width || rows > height) {
+            throw new IllegalArgumentException("Specified grid must have at least 1 cell and at most 1 cell per pixel in each direction.");
+        }
+
+        Map<Integer, Rectangle2D> regions = new LinkedHashMap<>();
+        for (int row = 0; row < rows; row++) {
+            int y1 = (int) ((long) height * row / rows);
+            int y2 = (int) ((long) height * (row + 1) / rows);
+            for (int column = 0; column < columns; column++) {
+                int x1 = (int) ((long) width * column / columns);
+                int x2 = (int) ((long) width * (column + 1) / columns);
+                regions.put(row * columns + column, new Rectangle2D(x1, y1, x2 - x1, y2 - y1));
+            }
+        }
+        return regions;
+    }
+
+    private static Image decode(Path path, int sampleSize) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return decode(inputStream, sampleSize);
+        }
+    }
+
+    private static Image decode(URL url, int sampleSize) throws IOException {
+        try (InputStream inputStream = url.openStream()) {
+            return decode(inputStream, sampleSize);
+        }
+    }
+
+    /**
+     * Decodes an image scaled down to fit into sampleSize x sampleSize pixels via the decode-time scaling of
+     * {@link Image#Image(InputStream, double, double, boolean, boolean)}. JavaFX scales images up to the requested
+     * size as well, so images that already fit, like icons, are decoded at their own size: enlarging them would only
+     * add pixels to scan and blended colors the image doesn't have. The size is read from the PNG, JPEG, GIF or BMP
+     * header; images of other formats are always decoded to the sample size
+     *
+     * @param inputStream stream of the encoded image
+     * @param sampleSize maximum width and height of the decoded image
+     *
+     * @return decoded {@link Image}
+     * @throws IOException if the image can't be decoded
+     */
+    private static Image decode(InputStream inputStream, int sampleSize) throws IOException {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("Specified sampleSize should be greater then 0.");
+        }
+
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        int[] size = ImageHeaders.size(in);
+        Image image = size != null && size[0] <= sampleSize && size[1] <= sampleSize
+                ? new Image(in)
+                : new Image(in, sampleSize, sampleSize, true, true);
+        if (image.isError()) {
+            throw new IOException("Unable to decode image", image.getException());
+        }
+        return image;
+    }
+
+    private static List<Color> toColors(ColorMap colorMap) {
+        return Optional.ofNullable(colorMap)
+                .map(ColorMap::palette)
+                .map(palette ->
+                        Arrays.stream(palette)
+                                .map(dominantColor -> Color.rgb(dominantColor[0], dominantColor[1], dominantColor[2]))
+                                .toList()
+                )
+                .orElse(null);
+    }
+
+    private static void checkColorCount(int colorCount) {
+        if (colorCount < 2 || colorCount > 256) {
+            throw new IllegalArgumentException("Specified colorCount must be between 2 and 256.");
+        }
+    }
+
+    private static void checkRegion(Image sourceImage, Rectangle2D region) {
+        if (region.getMinX() < 0 || region.getMinY() < 0
+                || region.getMaxX() > (int) sourceImage.getWidth() || region.getMaxY() > (int) sourceImage.getHeight()) {
+            throw new IllegalArgumentException("Specified region must be within the image bounds.");
+        }
+    }
+
+    private static Rectangle2D bounds(Image sourceImage) {
+        return new Rectangle2D(0, 0, (int) sourceImage.getWidth(), (int) sourceImage.getHeight());
+    }
+
+    /**
+     * Reads the sampled pixels of the rows from y1 (inclusive) to y2 (exclusive) of a region as packed ARGB ints
+     * and adds them straight to a {@link ColorHistogram}, without materializing them as RGB arrays. Rows are read
+     * in bulk via {@link PixelReader#getPixels(int, int, int, int, WritablePixelFormat, int[], int, int)}, unless
+     * only a few of their pixels are sampled
+     *
+     * @param histogram {@link ColorHistogram} to fill
+     * @param sourceImage source {@link Image}
+     * @param regionX left column of the region within the image
+     * @param regionY top row of the region within the image
+     * @param regionWidth width of the region
+     * @param plan {@link SamplingStrategy.Plan} of the whole region
+     * @param y1 first row, relative to the region
+     * @param y2 row after the last one, relative to the region
+     * @param ignoreWhite if <code>true</code>, white pixels are ignored
+     *
+     * @return the given histogram
+     */
+    private static ColorHistogram fillHistogram(
+            ColorHistogram histogram,
+            Image sourceImage,
+            int regionX,
+            int regionY,
+            int regionWidth,
+            SamplingStrategy.Plan plan,
+            int y1,
+            int y2,
+            boolean ignoreWhite) {
+        PixelReader pixelReader = sourceImage.getPixelReader();
+        int[] row = new int[regionWidth];
+        int[] columns = new int[regionWidth];
+
+        for (int y = y1; y < y2; y++) {
+            int count = plan.columns(y, columns);
+            if (count == 0) {
+                continue;
+            }
+
+            int first = columns[0];
+            int span = columns[count - 1] - first + 1;
+
+            if (count * SPARSE_ROW_STEP < span) {
+                for (int i = 0; i < count; i++) {
+                    histogram.addArgb(pixelReader.getArgb(regionX + columns[i], regionY + y), ignoreWhite);
+                }
+            } else {
+                pixelReader.getPixels(regionX + first, regionY + y, span, 1, ARGB_FORMAT, row, first, regionWidth);
+                for (int i = 0; i < count; i++) {
+                    histogram.addArgb(row[columns[i]], ignoreWhite);
+                }
+            }
+        }
+
+        return histogram;
+    }
+}
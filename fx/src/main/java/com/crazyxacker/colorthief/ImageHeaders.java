@@ -0,0 +1,179 @@
+package com.crazyxacker.colorthief;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the width and height of PNG, JPEG, GIF and BMP images from their headers, so an image can be checked against
+ * a sample size before JavaFX decodes it.
+ * <p>
+ * The stream must support {@link InputStream#mark(int)}; it's reset to where it was before, whether the size could
+ * be read or not. At most {@value #READ_LIMIT} bytes are read, enough to skip the metadata segments JPEG files put in
+ * front of the frame header.
+ */
+final class ImageHeaders {
+    private static final int READ_LIMIT = 1 << 20;
+
+    private ImageHeaders() {
+    }
+
+    /**
+     * @param inputStream stream of the encoded image, positioned at its first byte
+     *
+     * @return [width, height] or <code>null</code> if the format is unknown or the header is malformed
+     * @throws IOException if the stream can't be read
+     */
+    static int[] size(InputStream inputStream) throws IOException {
+        Reader in = new Reader(inputStream);
+        inputStream.mark(READ_LIMIT);
+        try {
+            int[] size = switch (in.u8()) {
+                case 0x89 -> png(in);
+                case 0xFF -> jpeg(in);
+                case 'G' -> gif(in);
+                case 'B' -> bmp(in);
+                default -> null;
+            };
+            return size != null && size[0] > 0 && size[1] > 0 ? size : null;
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    private static int[] png(Reader in) throws IOException {
+        if (!in.matches('P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+            return null;
+        }
+        in.skip(4);
+        if (!in.matches('I', 'H', 'D', 'R')) {
+            return null;
+        }
+        return new int[] {in.s32be(), in.s32be()};
+    }
+
+    private static int[] gif(Reader in) throws IOException {
+        if (!in.matches('I', 'F', '8')) {
+            return null;
+        }
+        int version = in.u8();
+        if (version != '7' && version != '9' || in.u8() != 'a') {
+            return null;
+        }
+        return new int[] {in.u16le(), in.u16le()};
+    }
+
+    private static int[] bmp(Reader in) throws IOException {
+        if (in.u8() != 'M') {
+            return null;
+        }
+        in.skip(12);
+        int headerSize = in.s32le();
+        if (headerSize == 12) {
+            return new int[] {in.u16le(), in.u16le()};
+        }
+        // Negative heights mark bitmaps stored top-down
+        return new int[] {in.s32le(), Math.abs(in.s32le())};
+    }
+
+    private static int[] jpeg(Reader in) throws IOException {
+        if (in.u8() != 0xD8) {
+            return null;
+        }
+
+        while (true) {
+            if (in.u8() != 0xFF) {
+                return null;
+            }
+            int marker = in.u8();
+            while (marker == 0xFF) {
+                marker = in.u8();
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                // End of image or start of scan before any frame header
+                return null;
+            }
+            if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7) {
+                continue;
+            }
+
+            int length = in.u16be();
+            if (length < 2) {
+                return null;
+            }
+            // Start of frame markers, except for DHT, JPG and DAC which share the range
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                in.skip(1);
+                int height = in.u16be();
+                return new int[] {in.u16be(), height};
+            }
+            in.skip(length - 2);
+        }
+    }
+
+    private static final class Reader {
+        private final InputStream in;
+        private int position;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        int u8() throws IOException {
+            if (position >= READ_LIMIT) {
+                throw new EOFException();
+            }
+            int value = in.read();
+            if (value < 0) {
+                throw new EOFException();
+            }
+            position++;
+            return value;
+        }
+
+        int u16be() throws IOException {
+            return u8() << 8 | u8();
+        }
+
+        int u16le() throws IOException {
+            return u8() | u8() << 8;
+        }
+
+        int s32be() throws IOException {
+            return u16be() << 16 | u16be();
+        }
+
+        int s32le() throws IOException {
+            return u16le() | u16le() << 16;
+        }
+
+        boolean matches(int... bytes) throws IOException {
+            for (int value : bytes) {
+                if (u8() != value) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void skip(int count) throws IOException {
+            if (count > READ_LIMIT - position) {
+                throw new EOFException();
+            }
+            long remaining = count;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException();
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            position += count;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.crazyxacker.colorthief;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded cache of color maps in front of {@link ColorThief}, for images whose palettes are requested again and
+ * again, like album art or avatars.
+ * <p>
+ * Entries are found by the {@link Image} instance they were extracted from first. Other instances of an equal
+ * image, e.g. the same file loaded twice, find them through a hash of the image size and of up to
+ * {@value #HASH_SAMPLES}x{@value #HASH_SAMPLES} evenly spread pixels, and share them only if a hash of all their
+ * pixels matches as well. That hash is only computed once another instance turns up with the same sampled hash, so
+ * the first lookup of an image costs no more than its extraction. An entry whose image was collected before such an
+ * instance turned up can't be compared anymore and is extracted again. The hashes of an instance are computed once
+ * and kept as long as the instance is reachable, except for {@link WritableImage}s whose pixels may change: they are
+ * hashed in full when they are stored and on every lookup. The entries are evicted least recently used first once
+ * the cache holds <code>maxEntries</code> of them.
+ * <p>
+ * Only images that have finished loading can be looked up. The returned {@link ColorMap}s are shared by all
+ * callers and must not be changed. The cache is thread safe; an entry missing from the cache may be computed by
+ * several threads at the same time.
+ */
+public class PaletteCache {
+    private static final int DEFAULT_QUALITY = 10;
+    private static final boolean DEFAULT_IGNORE_WHITE = true;
+    private static final int HASH_SAMPLES = 64;
+
+    private final int maxEntries;
+    private final Map<Image, Hashes> hashes = new WeakHashMap<>();
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxEntries maximum number of cached color maps
+     *
+     * @throws IllegalArgumentException if maxEntries is < 1
+     */
+    public PaletteCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Specified maxEntries should be greater then 0.");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > PaletteCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Cached {@link ColorThief#getDominantColor(Image)}
+     */
+    public Color getDominantColor(Image sourceImage) {
+        return getDominantColor(sourceImage, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Cached {@link ColorThief#getDominantColor(Image, int, boolean)}
+     */
+    public Color getDominantColor(Image sourceImage, int quality, boolean ignoreWhite) {
+        return Optional.ofNullable(getPalette(sourceImage, 5, quality, ignoreWhite))
+                .filter(paletteList -> !paletteList.isEmpty())
+                .map(palette -> palette.get(0))
+                .orElse(null);
+    }
+
+    /**
+     * Cached {@link ColorThief#getPalette(Image, int)}
+     */
+    public List<Color> getPalette(Image sourceImage, int colorCount) {
+        return getPalette(sourceImage, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Cached {@link ColorThief#getPalette(Image, int, int, boolean)}
+     */
+    public List<Color> getPalette(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        return Optional.ofNullable(getColorMap(sourceImage, colorCount, quality, ignoreWhite))
+                .map(colorMap -> colorMap.boxes.stream()
+                        .map(box -> box.avg(false))
+                        .map(color -> Color.rgb(color[0], color[1], color[2]))
+                        .toList())
+                .orElse(null);
+    }
+
+    /**
+     * Cached {@link ColorThief#getColorMap(Image, int)}
+     */
+    public ColorMap getColorMap(Image sourceImage, int colorCount) {
+        return getColorMap(sourceImage, colorCount, DEFAULT_QUALITY, DEFAULT_IGNORE_WHITE);
+    }
+
+    /**
+     * Cached {@link ColorThief#getColorMap(Image, int, int, boolean)}
+     *
+     * @return the shared {@link ColorMap}, which must not be changed
+     * @throws IllegalArgumentException if quality is < 1 or the image hasn't finished loading or failed to load
+     */
+    public ColorMap getColorMap(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        if (quality < 1) {
+            throw new IllegalArgumentException("Specified quality should be greater then 0.");
+        }
+        if (sourceImage.getProgress() < 1 || sourceImage.isError() || sourceImage.getPixelReader() == null) {
+            throw new IllegalArgumentException("Specified image has not been loaded.");
+        }
+
+        Hashes imageHashes = hashes(sourceImage);
+        Key key = new Key(imageHashes.sampled, (int) sourceImage.getWidth(), (int) sourceImage.getHeight(),
+                colorCount, quality, ignoreWhite);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && matches(entry, sourceImage, imageHashes)) {
+            synchronized (this) {
+                hits++;
+            }
+            return entry.colorMap;
+        }
+
+        ColorMap colorMap = ColorThief.getColorMap(sourceImage, colorCount, quality, ignoreWhite);
+        if (sourceImage instanceof WritableImage) {
+            // the entry keeps the hash of the pixels it was extracted from
+            imageHashes.content();
+        }
+        synchronized (this) {
+            misses++;
+            entries.put(key, new Entry(colorMap, new WeakReference<>(sourceImage), imageHashes));
+        }
+        return colorMap;
+    }
+
+    /**
+     * Whether an entry with the same key was extracted from the image or from an equal one. The hashes of all
+     * pixels are only computed for another instance
+     */
+    private static boolean matches(Entry entry, Image sourceImage, Hashes imageHashes) {
+        if (entry.source.get() == sourceImage && !(sourceImage instanceof WritableImage)) {
+            return true;
+        }
+
+        OptionalLong sourceContent = entry.sourceHashes.content();
+        return sourceContent.isPresent() && sourceContent.getAsLong() == imageHashes.content().getAsLong();
+    }
+
+    private Hashes hashes(Image sourceImage) {
+        if (sourceImage instanceof WritableImage) {
+            return new Hashes(sourceImage);
+        }
+
+        synchronized (this) {
+            return hashes.computeIfAbsent(sourceImage, Hashes::new);
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries, the counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hashes.clear();
+    }
+
+    private record Key(long sampledHash, int width, int height, int colorCount, int quality, boolean ignoreWhite) {
+    }
+
+    /**
+     * A cached color map with the instance it was extracted from and the hashes of that instance
+     */
+    private record Entry(ColorMap colorMap, WeakReference<Image> source, Hashes sourceHashes) {
+    }
+
+    /**
+     * 64 bit FNV-1a hashes of the size and the pixels of an image: of a grid of pixels, computed right away, and of
+     * all pixels, computed on first use
+     */
+    private static final class Hashes {
+        /**
+         * Weak, as the hashes are the values of a {@link WeakHashMap} keyed by the image
+         */
+        private final WeakReference<Image> image;
+        private final long sampled;
+        private long content;
+        private boolean contentHashed;
+
+        private Hashes(Image image) {
+            this.image = new WeakReference<>(image);
+            this.sampled = sampledHash(image);
+        }
+
+        /**
+         * @return hash of all pixels, empty if the image was collected before it was hashed
+         */
+        private synchronized OptionalLong content() {
+            if (!contentHashed) {
+                Image sourceImage = image.get();
+                if (sourceImage == null) {
+                    return OptionalLong.empty();
+                }
+                content = contentHash(sourceImage);
+                contentHashed = true;
+            }
+            return OptionalLong.of(content);
+        }
+    }
+
+    private static long sizeHash(Image sourceImage) {
+        long hash = 0xCBF29CE484222325L;
+        hash = (hash ^ (int) sourceImage.getWidth()) * 0x100000001B3L;
+        return (hash ^ (int) sourceImage.getHeight()) * 0x100000001B3L;
+    }
+
+    private static long sampledHash(Image sourceImage) {
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+        long hash = sizeHash(sourceImage);
+
+        PixelReader reader = sourceImage.getPixelReader();
+        int columns = Math.min(width, HASH_SAMPLES);
+        int rows = Math.min(height, HASH_SAMPLES);
+        for (int row = 0; row < rows; row++) {
+            int y = (int) ((2L * row + 1) * height / (2L * rows));
+            for (int column = 0; column < columns; column++) {
+                int x = (int) ((2L * column + 1) * width / (2L * columns));
+                hash = (hash ^ reader.getArgb(x, y)) * 0x100000001B3L;
+            }
+        }
+        return hash;
+    }
+
+    private static long contentHash(Image sourceImage) {
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+        long hash = sizeHash(sourceImage);
+
+        PixelReader reader = sourceImage.getPixelReader();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            reader.getPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), row, 0, width);
+            for (int argb : row) {
+                hash = (hash ^ argb) * 0x100000001B3L;
+            }
+        }
+        return hash;
+    }
+}
@@ -33,9 +33,9 @@ public class ColorThiefPerformanceTest extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        Image img1 = new Image(new File("./examples/img/photo1.jpg").toURL().toString());
-        Image img2 = new Image(new File("./examples/img/photo2.jpg").toURL().toString());
-        Image img3 = new Image(new File("./examples/img/photo3.jpg").toURL().toString());
+        Image img1 = new Image(new File("../examples/img/photo1.jpg").toURL().toString());
+        Image img2 = new Image(new File("../examples/img/photo2.jpg").toURL().toString());
+        Image img3 = new Image(new File("../examples/img/photo3.jpg").toURL().toString());
 
         // Warm up JIT
         System.out.println("Warming up...");
@@ -40,9 +40,9 @@ public class ColorThiefTest extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        test(new File("./examples/img/photo1.jpg").toURL().toString());
-        test(new File("./examples/img/photo2.jpg").toURL().toString());
-        test(new File("./examples/img/photo3.jpg").toURL().toString());
+        test(new File("../examples/img/photo1.jpg").toURL().toString());
+        test(new File("../examples/img/photo2.jpg").toURL().toString());
+        test(new File("../examples/img/photo3.jpg").toURL().toString());
 
         saveToHTMLFile("examples-test.html");
 
@@ -0,0 +1,410 @@
+package com.crazyxacker.colorthief;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that the faster and more specialized ways to extract a palette give the same results as the plain
+ * {@link ColorThief} calls and {@link LegacyMMCQ} for the example images
+ */
+public class ConsistencyTest extends Application {
+    private static final int[] COLOR_COUNTS = {2, 5, 10, 64, 256};
+    private static final int[] QUALITIES = {1, 10};
+    private static final SamplingStrategy[] SAMPLINGS = {
+            SamplingStrategy.stride(1), SamplingStrategy.stride(7), SamplingStrategy.grid(3), SamplingStrategy.budget(5000)
+    };
+    private static final String[] SAMPLING_NAMES = {"stride(1)", "stride(7)", "grid(3)", "budget(5000)"};
+
+    private int failures;
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        String photo1 = new File("../examples/img/photo1.jpg").toURI().toURL().toString();
+        Image[] images = {
+                new Image(photo1),
+                new Image(new File("../examples/img/photo2.jpg").toURI().toURL().toString()),
+                new Image(new File("../examples/img/photo3.jpg").toURI().toURL().toString()),
+                // big enough to be split into bands at the default quality as well
+                new Image(photo1, 2400, 1800, false, false)
+        };
+
+        for (Image image : images) {
+            testParallel(image);
+            testRegions(image);
+            testMultiRegion(image);
+            testPixelBuffers(image);
+            testQuantizers(image);
+        }
+        testPosterize(images[0]);
+        testCache(photo1, images[1]);
+        testAsync(images);
+
+        System.out.println(failures == 0 ? "All checks passed." : failures + " checks failed!");
+
+        Platform.exit();
+    }
+
+    /**
+     * Histograms built in parallel bands give the palette of a single pass
+     */
+    private void testParallel(Image image) {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int colorCount : COLOR_COUNTS) {
+                for (int quality : QUALITIES) {
+                    int[][] expected = LegacyMMCQ.palette(image, colorCount, quality, true);
+                    check("parallel, colorCount = " + colorCount + ", quality = " + quality, expected,
+                            ColorThief.getColorMap(image, colorCount, quality, true, ForkJoinPool.commonPool()).palette());
+                    check("parallel on 3 threads, colorCount = " + colorCount + ", quality = " + quality, expected,
+                            ColorThief.getColorMap(image, colorCount, quality, true, executor).palette());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Palettes of a region are the palettes of a cropped copy of it
+     */
+    private void testRegions(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        Rectangle2D[] regions = {
+                new Rectangle2D(0, 0, width, height),
+                new Rectangle2D(0, 0, width / 3, height / 2),
+                new Rectangle2D(width / 2 + 1, height / 3, width - width / 2 - 1, height / 5),
+                new Rectangle2D(width - 17, height - 1, 17, 1)
+        };
+
+        for (Rectangle2D region : regions) {
+            Image cropped = crop(image, region);
+            for (int colorCount : COLOR_COUNTS) {
+                for (int i = 0; i < SAMPLINGS.length; i++) {
+                    check("region " + region + ", colorCount = " + colorCount + ", sampling = " + SAMPLING_NAMES[i],
+                            ColorThief.getColorMap(cropped, colorCount, SAMPLINGS[i], false).palette(),
+                            ColorThief.getColorMap(image, region, colorCount, SAMPLINGS[i], false).palette());
+                }
+            }
+        }
+    }
+
+    /**
+     * Palettes of several regions traversed at once are the palettes of every region on its own, and the combined
+     * palette of a grid sampled at every pixel is the palette of the whole image
+     */
+    private void testMultiRegion(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        Map<String, Rectangle2D> strips = new LinkedHashMap<>();
+        strips.put("top", new Rectangle2D(0, 0, width, height / 10));
+        strips.put("left", new Rectangle2D(0, 0, width / 10, height));
+        strips.put("bottom", new Rectangle2D(0, height - height / 10, width, height / 10));
+        strips.put("right", new Rectangle2D(width - width / 10, 0, width / 10, height));
+        strips.put("center", new Rectangle2D(width / 4, height / 4, width / 2, height / 2));
+
+        for (Map<?, Rectangle2D> regions : Arrays.asList(strips, ColorThief.gridRegions(image, 3, 2), ColorThief.gridRegions(image, 7, 5))) {
+            for (int colorCount : COLOR_COUNTS) {
+                for (int i = 0; i < SAMPLINGS.length; i++) {
+                    RegionColorMaps<?> colorMaps = ColorThief.getColorMaps(image, regions, colorCount, SAMPLINGS[i], true);
+                    for (Map.Entry<?, Rectangle2D> region : regions.entrySet()) {
+                        check("multi-region " + region.getKey() + ", colorCount = " + colorCount + ", sampling = " + SAMPLING_NAMES[i],
+                                ColorThief.getColorMap(image, region.getValue(), colorCount, SAMPLINGS[i], true).palette(),
+                                colorMaps.regions().get(region.getKey()).palette());
+                    }
+                }
+            }
+        }
+
+        for (int colorCount : COLOR_COUNTS) {
+            check("combined grid, colorCount = " + colorCount,
+                    ColorThief.getColorMap(image, colorCount, 1, true).palette(),
+                    ColorThief.getColorMaps(image, ColorThief.gridRegions(image, 4, 4), colorCount, 1, true).combined().palette());
+        }
+    }
+
+    /**
+     * Palettes of raw buffers in every supported layout, with padding before the pixels and between the rows, are
+     * the palettes of the image
+     */
+    private void testPixelBuffers(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] argb = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+
+        int offset = 5;
+        int stride = width + 3;
+        int[] padded = new int[offset + height * stride];
+        IntBuffer intBuffer = IntBuffer.allocate(padded.length);
+        ByteBuffer bgra = ByteBuffer.allocateDirect(offset + height * stride * 4);
+        ByteBuffer rgba = ByteBuffer.allocate(offset + height * stride * 4);
+        ByteBuffer rgb = ByteBuffer.allocate(offset + height * stride * 3);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[y * width + x];
+                int i = y * stride + x;
+                byte a = (byte) (pixel >>> 24), r = (byte) (pixel >> 16), g = (byte) (pixel >> 8), b = (byte) pixel;
+                padded[offset + i] = pixel;
+                intBuffer.put(offset + i, pixel);
+                bgra.put(offset + i * 4, b).put(offset + i * 4 + 1, g).put(offset + i * 4 + 2, r).put(offset + i * 4 + 3, a);
+                rgba.put(offset + i * 4, r).put(offset + i * 4 + 1, g).put(offset + i * 4 + 2, b).put(offset + i * 4 + 3, a);
+                rgb.put(offset + i * 3, r).put(offset + i * 3 + 1, g).put(offset + i * 3 + 2, b);
+            }
+        }
+        intBuffer.position(offset);
+        bgra.position(offset);
+        rgba.position(offset);
+        rgb.position(offset);
+
+        PixelBuffer[] buffers = {
+                PixelBuffer.ofArgb(argb, width, height),
+                PixelBuffer.ofArgb(padded, offset, width, height, stride),
+                PixelBuffer.ofArgb(intBuffer, width, height, stride),
+                PixelBuffer.ofBgra(bgra, width, height, stride * 4),
+                PixelBuffer.ofRgba(rgba, width, height, stride * 4),
+                PixelBuffer.ofRgb(rgb, width, height, stride * 3)
+        };
+        String[] names = {"int[]", "padded int[]", "IntBuffer", "BGRA", "RGBA", "RGB"};
+
+        Rectangle2D region = new Rectangle2D(width / 5, height / 3, width / 2, height / 2);
+        for (int colorCount : COLOR_COUNTS) {
+            for (int quality : QUALITIES) {
+                int[][] expected = ColorThief.getColorMap(image, colorCount, quality, true).palette();
+                int[][] expectedRegion = ColorThief.getColorMap(image, region, colorCount, quality, true).palette();
+                for (int i = 0; i < buffers.length; i++) {
+                    check(names[i] + " buffer, colorCount = " + colorCount + ", quality = " + quality, expected,
+                            ColorThief.getColorMap(buffers[i], colorCount, quality, true).palette());
+                    PixelBuffer bufferRegion = buffers[i].region((int) region.getMinX(), (int) region.getMinY(),
+                            (int) region.getWidth(), (int) region.getHeight());
+                    check(names[i] + " buffer region, colorCount = " + colorCount + ", quality = " + quality, expectedRegion,
+                            ColorThief.getColorMap(bufferRegion, colorCount, quality, true).palette());
+                }
+            }
+        }
+    }
+
+    /**
+     * The median cut quantizer gives the legacy palettes, Wu's quantizer gives the same palettes from an image and
+     * from its histogram and keeps every sampled pixel in one of its boxes
+     */
+    private void testQuantizers(Image image) {
+        for (int colorCount : COLOR_COUNTS) {
+            for (int quality : QUALITIES) {
+                String name = "colorCount = " + colorCount + ", quality = " + quality;
+                check("median cut quantizer, " + name, LegacyMMCQ.palette(image, colorCount, quality, true),
+                        ColorThief.getColorMap(image, colorCount, SamplingStrategy.stride(quality), true, Quantizer.medianCut()).palette());
+
+                for (int sigbits = MMCQ.MIN_SIGBITS; sigbits <= MMCQ.MAX_SIGBITS; sigbits++) {
+                    ColorHistogram histogram = ColorThief.getHistogram(image, SamplingStrategy.stride(quality), true, sigbits);
+                    ColorMap colorMap = Quantizer.wu().quantize(histogram, colorCount);
+                    int population = 0;
+                    for (MMCQ.ColorSpaceBox box : colorMap.boxes) {
+                        population += box.count(false);
+                    }
+                    check("Wu population, sigbits = " + sigbits + ", " + name, histogram.count(), population);
+                    check("Wu palette size, sigbits = " + sigbits + ", " + name, true, colorMap.size() >= 1 && colorMap.size() <= colorCount);
+                    if (sigbits == MMCQ.DEFAULT_SIGBITS) {
+                        check("Wu quantizer, " + name, colorMap.palette(),
+                                ColorThief.getColorMap(image, colorCount, SamplingStrategy.stride(quality), true, Quantizer.wu()).palette());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Posterizing maps an image to its own palette, keeps the alpha of fully transparent images and rejects palette
+     * sizes that give no palette
+     */
+    private void testPosterize(Image image) {
+        WritableImage transparent = new WritableImage(40, 30);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 40; x++) {
+                transparent.getPixelWriter().setArgb(x, y, (x * 6) << 16 | (y * 8) << 8 | 0x40);
+            }
+        }
+
+        for (Image source : new Image[] {image, transparent}) {
+            for (int colorCount : new int[] {2, 16}) {
+                for (boolean dither : new boolean[] {false, true}) {
+                    String name = "posterized " + (source == transparent ? "transparent image" : "image") + ", colorCount = "
+                            + colorCount + ", dither = " + dither;
+                    List<Integer> posterized = argb(ColorThief.posterize(source, colorCount, dither));
+                    check(name, argb(ColorThief.remap(source, ColorThief.getColorMap(source, colorCount, 10, false), dither)), posterized);
+                    if (source == transparent) {
+                        check(name + " stays transparent", true, posterized.stream().allMatch(argb -> argb >>> 24 == 0));
+                    }
+                }
+            }
+        }
+
+        for (int colorCount : new int[] {1, 257}) {
+            try {
+                ColorThief.posterize(transparent, colorCount, false);
+                check("posterized with colorCount = " + colorCount + " rejected", true, false);
+            } catch (IllegalArgumentException e) {
+                // rejected
+            }
+        }
+    }
+
+    private static List<Integer> argb(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return Arrays.stream(pixels).boxed().toList();
+    }
+
+    /**
+     * The cache finds an image by its instance and equal images by their content, counts hits, misses and
+     * evictions and returns the palettes of {@link ColorThief}
+     */
+    private void testCache(String url, Image other) {
+        Image image = new Image(url);
+        int[][] expected = ColorThief.getColorMap(image, 8, 10, true).palette();
+
+        PaletteCache cache = new PaletteCache(2);
+        ColorMap colorMap = cache.getColorMap(image, 8);
+        check("cached palette", expected, colorMap.palette());
+        check("cache misses of a new image", 1L, cache.getMissCount());
+        check("cache hit of the same instance", true, cache.getColorMap(image, 8) == colorMap);
+        check("cache hit of another instance of the same file", true, cache.getColorMap(new Image(url), 8) == colorMap);
+        check("cache hits", 2L, cache.getHitCount());
+
+        check("cached palette of another color count", ColorThief.getColorMap(image, 5, 10, true).palette(),
+                cache.getColorMap(image, 5).palette());
+        check("cache misses of another color count", 2L, cache.getMissCount());
+        check("cache size", 2, cache.size());
+
+        check("cached palette of another image", ColorThief.getColorMap(other, 8, 10, true).palette(),
+                cache.getColorMap(other, 8).palette());
+        check("cache evictions", 1L, cache.getEvictionCount());
+        check("cache size after an eviction", 2, cache.size());
+        // the least recently used entry is gone
+        cache.getColorMap(image, 8);
+        check("cache misses after an eviction", 4L, cache.getMissCount());
+
+        // a writable copy of the image finds the entry by its content, until one of its pixels changes
+        WritableImage copy = (WritableImage) crop(image, new Rectangle2D(0, 0, image.getWidth(), image.getHeight()));
+        cache.getColorMap(copy, 8);
+        check("cache hits of an equal writable image", 3L, cache.getHitCount());
+        int argb = copy.getPixelReader().getArgb(1, 1);
+        copy.getPixelWriter().setArgb(1, 1, argb ^ 0x010101);
+        cache.getColorMap(copy, 8);
+        check("cache misses of a changed writable image", 5L, cache.getMissCount());
+
+        cache.clear();
+        check("cleared cache size", 0, cache.size());
+        check("cleared cache keeps its counters", 3L, cache.getHitCount());
+    }
+
+    /**
+     * Asynchronous extractions hand at most maxInFlight tasks to the executor, skip cancelled ones, survive
+     * rejected ones and give the palettes of {@link ColorThief}
+     */
+    private void testAsync(Image[] images) throws Exception {
+        // runs the handed over tasks only when asked to
+        Queue<Runnable> handedOver = new ArrayDeque<>();
+        AsyncColorThief colorThief = new AsyncColorThief(handedOver::add, 2);
+
+        List<CompletableFuture<ColorMap>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(colorThief.getColorMapAsync(images[i % 3], 8, 10, true));
+        }
+        check("tasks handed over at first", 2, handedOver.size());
+        futures.get(3).cancel(false);
+
+        int ran = 0;
+        while (!handedOver.isEmpty()) {
+            handedOver.poll().run();
+            ran++;
+            check("tasks handed over at most", true, handedOver.size() <= 2);
+        }
+        check("tasks run without the cancelled one", 5, ran);
+        check("cancelled task", true, futures.get(3).isCancelled());
+        for (int i = 0; i < futures.size(); i++) {
+            if (i != 3) {
+                check("asynchronous palette " + i, ColorThief.getColorMap(images[i % 3], 8, 10, true).palette(),
+                        futures.get(i).get().palette());
+            }
+        }
+
+        AsyncColorThief rejecting = new AsyncColorThief(task -> {
+            throw new RejectedExecutionException("Rejected");
+        }, 1);
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<ColorMap> future = rejecting.getColorMapAsync(images[0], 8, 10, true);
+            check("rejected task " + i, true, future.isCompletedExceptionally());
+        }
+
+        // batches of files on a real pool
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AsyncColorThief batch = new AsyncColorThief(executor, 2);
+            List<Path> paths = new ArrayList<>();
+            for (String name : new String[] {"photo1.jpg", "photo2.jpg", "photo3.jpg"}) {
+                paths.add(new File("../examples/img", name).toPath());
+            }
+            Map<Path, ColorMap> results = new ConcurrentHashMap<>();
+            batch.getColorMaps(paths, 256, 8, 10, true, results::put).get();
+            check("batch results", paths.size(), results.size());
+            for (Path path : paths) {
+                check("batch palette of " + path, ColorThief.getColorMap(path, 256, 8, 10, true).palette(), results.get(path).palette());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Image crop(Image image, Rectangle2D region) {
+        int width = (int) region.getWidth();
+        int height = (int) region.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels((int) region.getMinX(), (int) region.getMinY(), width, height,
+                PixelFormat.getIntArgbInstance(), pixels, 0, width);
+
+        WritableImage cropped = new WritableImage(width, height);
+        cropped.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return cropped;
+    }
+
+    private void check(String name, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failures++;
+            System.out.println("Values differ for " + name + ":\n  expected " + expected + "\n  actual   " + actual);
+        }
+    }
+
+    private void check(String name, int[][] expected, int[][] actual) {
+        if (!Arrays.deepEquals(expected, actual)) {
+            failures++;
+            System.out.println("Palettes differ for " + name + ":\n  expected " + Arrays.deepToString(expected)
+                    + "\n  actual   " + Arrays.deepToString(actual));
+        }
+    }
+}
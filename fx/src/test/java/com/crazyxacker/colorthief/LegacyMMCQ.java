@@ -18,9 +18,17 @@
 
 package com.crazyxacker.colorthief;
 
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.paint.Color;
+
 import java.util.*;
 
-class MMCQ {
+/**
+ * The median cut quantization as it was ported from the JavaScript version, kept as the reference of
+ * {@link MMCQRegressionTest}
+ */
+class LegacyMMCQ {
 
     private static final int SIGBITS = 5;
     private static final int RSHIFT = 8 - SIGBITS;
@@ -348,7 +356,49 @@ class MMCQ {
         throw new RuntimeException("VBox can't be cut");
     }
 
-    public static ColorMap quantize(int[][] pixels, int maxColors) {
+    /**
+     * Samples the image pixel by pixel via {@link PixelReader#getColor(int, int)} and quantizes it
+     *
+     * @return palette as RGB int arrays or <code>null</code> if no pixel is left
+     */
+    static int[][] palette(Image sourceImage, int colorCount, int quality, boolean ignoreWhite) {
+        return quantize(getPixels(sourceImage, quality, ignoreWhite), colorCount);
+    }
+
+    private static int[][] getPixels(Image sourceImage, int quality, boolean ignoreWhite) {
+        int width = (int) sourceImage.getWidth();
+        int height = (int) sourceImage.getHeight();
+
+        int pixelCount = width * height;
+        PixelReader pixelReader = sourceImage.getPixelReader();
+
+        // numRegardedPixels must be rounded up to avoid an ArrayIndexOutOfBoundsException if all
+        // pixels are good.
+        int numRegardedPixels = (pixelCount + quality - 1) / quality;
+
+        int[][] res = new int[numRegardedPixels][];
+        int r, g, b;
+
+        int numUsedPixels = 0;
+        for (int i = 0; i < pixelCount; i += quality) {
+            int x = i % width;
+            int y = i / width;
+
+            Color pixelColor = pixelReader.getColor(x, y);
+            r = (int) (255 * pixelColor.getRed());
+            g = (int) (255 * pixelColor.getGreen());
+            b = (int) (255 * pixelColor.getBlue());
+
+            if (!(ignoreWhite && r > 250 && g > 250 && b > 250)) {
+                res[numUsedPixels] = new int[] {r, g, b};
+                numUsedPixels++;
+            }
+        }
+
+        return Arrays.copyOfRange(res, 0, numUsedPixels);
+    }
+
+    static int[][] quantize(int[][] pixels, int maxColors) {
         // short-circuit
         if (pixels.length == 0 || maxColors < 2 || maxColors > 256) {
             return null;
@@ -379,12 +429,12 @@ class MMCQ {
         Collections.reverse(pq);
 
         // calculate the actual colors
-        ColorMap cmap = new ColorMap();
-        for (ColorSpaceBox vb : pq) {
-            cmap.push(vb);
+        int[][] palette = new int[pq.size()][];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = pq.get(i).avg(false);
         }
 
-        return cmap;
+        return palette;
     }
 
     /**
@@ -0,0 +1,57 @@
+package com.crazyxacker.colorthief;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Compares the palettes of {@link ColorThief} with the ones of {@link LegacyMMCQ} for the example images
+ */
+public class MMCQRegressionTest extends Application {
+    private static final int[] COLOR_COUNTS = {2, 5, 10, 64, 128, 256};
+    private static final int[] QUALITIES = {1, 10};
+
+    private int failures;
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        test(new File("../examples/img/photo1.jpg").toURI().toURL().toString());
+        test(new File("../examples/img/photo2.jpg").toURI().toURL().toString());
+        test(new File("../examples/img/photo3.jpg").toURI().toURL().toString());
+
+        System.out.println(failures == 0 ? "All palettes match." : failures + " palettes differ!");
+
+        Platform.exit();
+    }
+
+    /**
+     * Tests the image at the given path name with every color count, quality and white handling.
+     *
+     * @param pathname
+     *            the image path name
+     */
+    private void test(String pathname) {
+        System.out.println("Analyzing image " + pathname + "...");
+        Image img = new Image(pathname);
+
+        for (int colorCount : COLOR_COUNTS) {
+            for (int quality : QUALITIES) {
+                for (boolean ignoreWhite : new boolean[] {true, false}) {
+                    int[][] expected = LegacyMMCQ.palette(img, colorCount, quality, ignoreWhite);
+                    int[][] actual = ColorThief.getColorMap(img, colorCount, quality, ignoreWhite).palette();
+
+                    if (!Arrays.deepEquals(expected, actual)) {
+                        failures++;
+                        System.out.println("Palettes differ for colorCount = " + colorCount + ", quality = " + quality
+                                + ", ignoreWhite = " + ignoreWhite + ":\n  expected " + Arrays.deepToString(expected)
+                                + "\n  actual   " + Arrays.deepToString(actual));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.crazyxacker.colorthief;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.stage.Stage;
+
+import java.io.File;
+
+/**
+ * Compares speed and palette error of the supported histogram precisions for the example images
+ */
+public class PrecisionPerformanceTest extends Application {
+    private static final int NUM_TESTS_WARMUP = 200;
+    private static final int NUM_TESTS = 200;
+    private static final int[] COLOR_COUNTS = {5, 16, 64};
+    private static final int ERROR_STEP = 4;
+    private static final int QUALITY = 10;
+    private static final boolean IGNORE_WHITE = true;
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        Image[] images = {
+                new Image(new File("../examples/img/photo1.jpg").toURI().toURL().toString()),
+                new Image(new File("../examples/img/photo2.jpg").toURI().toURL().toString()),
+                new Image(new File("../examples/img/photo3.jpg").toURI().toURL().toString())
+        };
+
+        for (int colorCount : COLOR_COUNTS) {
+            for (int sigbits = MMCQ.MIN_SIGBITS; sigbits <= MMCQ.MAX_SIGBITS; sigbits++) {
+                // Warm up JIT
+                test(images, colorCount, sigbits, NUM_TESTS_WARMUP);
+
+                long start = System.nanoTime();
+                test(images, colorCount, sigbits, NUM_TESTS);
+                double perImage = (System.nanoTime() - start) / 1e6 / NUM_TESTS / images.length;
+
+                double error = 0;
+                for (Image image : images) {
+                    error += error(image, ColorThief.getColorMap(image, colorCount, SamplingStrategy.stride(QUALITY), IGNORE_WHITE, sigbits));
+                }
+
+                System.out.printf("colors = %3d, sigbits = %d: %.3f ms per image, mean error = %.2f%n",
+                        colorCount, sigbits, perImage, error / images.length);
+            }
+        }
+
+        Platform.exit();
+    }
+
+    private static void test(Image[] images, int colorCount, int sigbits, int max) {
+        long sum = 0;
+        SamplingStrategy sampling = SamplingStrategy.stride(QUALITY);
+
+        for (int i = 0; i < max; i++) {
+            for (Image image : images) {
+                sum += ColorThief.getColorMap(image, colorCount, sampling, IGNORE_WHITE, sigbits).size();
+            }
+        }
+
+        // Keep the JIT from optimizing the calls away
+        if (sum == 0) {
+            System.out.println("No palette found");
+        }
+    }
+
+    /**
+     * Mean euclidean RGB distance between the pixels of the image and their nearest palette color
+     */
+    private static double error(Image image, ColorMap colorMap) {
+        PixelReader reader = image.getPixelReader();
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] rgb = new int[3];
+        double sum = 0;
+        long count = 0;
+
+        for (int y = 0; y < height; y += ERROR_STEP) {
+            for (int x = 0; x < width; x += ERROR_STEP) {
+                int argb = reader.getArgb(x, y);
+                rgb[0] = (argb >> 16) & 0xFF;
+                rgb[1] = (argb >> 8) & 0xFF;
+                rgb[2] = argb & 0xFF;
+
+                int[] nearest = colorMap.nearest(rgb);
+                int dr = rgb[0] - nearest[0];
+                int dg = rgb[1] - nearest[1];
+                int db = rgb[2] - nearest[2];
+                sum += Math.sqrt(dr * dr + dg * dg + db * db);
+                count++;
+            }
+        }
+        return sum / count;
+    }
+}
@@ -0,0 +1,11 @@
+package com.crazyxacker.colorthief;
+
+import javafx.application.Application;
+
+public class RunConsistencyTest {
+
+    public static void main(String[] args) {
+        Application.launch(ConsistencyTest.class, args);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,11 @@
+package com.crazyxacker.colorthief;
+
+import javafx.application.Application;
+
+public class RunPrecisionPerformanceTest {
+
+    public static void main(String[] args) {
+        Application.launch(PrecisionPerformanceTest.class, args);
+        System.exit(0);
+    }
+}
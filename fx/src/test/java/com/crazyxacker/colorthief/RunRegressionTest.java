@@ -0,0 +1,11 @@
+package com.crazyxacker.colorthief;
+
+import javafx.application.Application;
+
+public class RunRegressionTest {
+
+    public static void main(String[] args) {
+        Application.launch(MMCQRegressionTest.class, args);
+        System.exit(0);
+    }
+}